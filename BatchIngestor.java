@@ -0,0 +1,668 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
+
+/**
+ * The BatchIngestor class replays recorded customer sessions from a file without any user interface.
+ * Every line of the input is one purchase request, either as comma separated values
+ * ({@code selection,fives,tens,twenties,fifties,hundreds}) or as a JSON object
+ * ({@code {"selection": 3, "cash": [0, 1, 0, 0, 2]}}). Blank lines, lines starting with {@code #} and a
+ * header line starting with a letter are skipped.
+ *
+ * <p>
+ * For every request one line is written to the output: {@code line,selection,STATUS,fives,tens,twenties,fifties,hundreds}
+ * where the counts are the change paid out. Lines that are not valid requests are reported as {@code MALFORMED}.
+ * </p>
+ *
+ * <p>
+ * The input is read through a fixed size direct buffer and parsed in place. Parsing runs on the calling thread
+ * and hands batches of requests to a single worker thread that processes them in input order and writes the
+ * results, so reading the next batch overlaps with processing the previous one. Batches are recycled through
+ * a bounded queue, so memory use does not depend on the size of the input.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class BatchIngestor {
+    public static final int DEFAULT_BATCH_SIZE = 8192;
+    private static final int QUEUE_DEPTH = 4;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_OUTPUT_LINE = 128;
+    private static final int DENOMINATIONS = Cash.values().length;
+    private static final byte[][] STATUS_NAMES = new byte[TransactionStatus.values().length][];
+    private static final byte[] MALFORMED = "MALFORMED".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SELECTION_KEY = "selection".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CASH_KEY = "cash".getBytes(StandardCharsets.US_ASCII);
+
+    static {
+        for (TransactionStatus status : TransactionStatus.values()) {
+            STATUS_NAMES[status.ordinal()] = status.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * The BatchListener interface is told about every batch once its results have been written.
+     */
+    public interface BatchListener {
+
+        /**
+         * Called on the worker thread after a batch was processed and written.
+         *
+         * @param batch   The number of the batch, starting at 1.
+         * @param records The number of records in the batch.
+         * @param bytes   The number of input bytes in the batch.
+         * @param nanos   The time it took to process and write the batch, in nanoseconds.
+         */
+        void batchCompleted(long batch, int records, long bytes, long nanos);
+    }
+
+    private final Function<VendingMachineRequest, TransactionResult> processor;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private BatchListener listener;
+
+    /**
+     * Creates an ingestor that runs every request as a purchase on a vending machine, taking stock and cash into account.
+     *
+     * @param engine The engine of the vending machine.
+     */
+    public BatchIngestor(TransactionEngine engine) {
+        this(engine::process);
+    }
+
+    /**
+     * Creates an ingestor that prices every request against the catalog and calculates its change with a controller.
+     * Stock is not taken into account.
+     *
+     * @param controller The controller calculating the change.
+     */
+    public BatchIngestor(VendingMachineController controller) {
+        this(request -> sell(controller, request));
+    }
+
+    /**
+     * Creates an ingestor that hands every request to the specified function.
+     *
+     * @param processor Processes a request; it is only ever called from one thread at a time, in input order.
+     */
+    public BatchIngestor(Function<VendingMachineRequest, TransactionResult> processor) {
+        this.processor = processor;
+    }
+
+    /**
+     * Replays a file of purchase requests.
+     * Usage: java BatchIngestor input [output|-] [snapshot]
+     * Without a snapshot the requests are priced against the preset catalog; with one they are sold
+     * from the restored vending machine. Per-batch throughput is reported on standard error.
+     *
+     * @param args The input file, the optional output file and the optional machine snapshot.
+     * @throws IOException if a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java BatchIngestor input [output|-] [snapshot]");
+            return;
+        }
+        BatchIngestor ingestor;
+        if (args.length > 2) {
+            MachineSnapshot snapshot = MachineSnapshot.restore(Paths.get(args[2]));
+            snapshot.installCatalog();
+            ingestor = new BatchIngestor(new TransactionEngine(snapshot.getSlots(),
+                    snapshot.createMaintenanceManager().getCashVault()));
+        } else {
+            ingestor = new BatchIngestor(new VendingMachineController());
+        }
+        ingestor.setBatchListener((batch, records, bytes, nanos) -> System.err.printf(
+                "Batch %d: %d records in %.2f ms (%.0f records/s, %.1f MB/s)%n", batch, records, nanos / 1e6,
+                records * 1e9 / Math.max(nanos, 1), bytes * 1e3 / Math.max(nanos, 1)));
+        boolean toFile = args.length > 1 && !args[1].equals("-");
+        OutputStream out = toFile ? Files.newOutputStream(Paths.get(args[1])) : new BufferedOutputStream(System.out);
+        try {
+            System.err.println(ingestor.ingest(Paths.get(args[0]), out));
+        } finally {
+            if (toFile) {
+                out.close();
+            } else {
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Sets the number of requests handed to the worker thread at a time.
+     *
+     * @param batchSize The number of requests per batch.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be positive.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the listener told about every completed batch.
+     *
+     * @param listener The listener, or null for none.
+     */
+    public void setBatchListener(BatchListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Replays a file of purchase requests.
+     *
+     * @param input  The file holding one request per line.
+     * @param output The stream the results are written to; it is flushed but not closed.
+     * @return The report of the replay.
+     * @throws IOException if the input cannot be read or the output cannot be written.
+     */
+    public IngestionReport ingest(Path input, OutputStream output) throws IOException {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            return ingest(in, output);
+        }
+    }
+
+    /**
+     * Replays a stream of purchase requests.
+     *
+     * @param input  The channel holding one request per line.
+     * @param output The stream the results are written to; it is flushed but not closed.
+     * @return The report of the replay.
+     * @throws IOException if the input cannot be read or the output cannot be written.
+     */
+    public IngestionReport ingest(ReadableByteChannel input, OutputStream output) throws IOException {
+        long start = System.nanoTime();
+        Worker worker = new Worker(output);
+        Thread thread = new Thread(worker, "batch-ingestor-worker");
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            parse(input, worker);
+        } finally {
+            worker.finish();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        worker.rethrow();
+        output.flush();
+        worker.report.setElapsedNanos(System.nanoTime() - start);
+        return worker.report;
+    }
+
+    /**
+     * Reads the input line by line on the calling thread and hands the requests to the worker in batches.
+     *
+     * @param input  The channel holding one request per line.
+     * @param worker The worker processing the batches.
+     * @throws IOException if the input cannot be read or the worker failed.
+     */
+    private void parse(ReadableByteChannel input, Worker worker) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        LineParser parser = new LineParser(buffer);
+        Batch batch = worker.nextFree();
+        long lineNumber = 0;
+        boolean headerAllowed = true;
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            while (buffer.hasRemaining() && !endOfInput) {
+                endOfInput = input.read(buffer) < 0;
+            }
+            buffer.flip();
+            int limit = buffer.limit();
+            int position = buffer.position();
+            while (position < limit) {
+                int lineEnd = indexOfLineFeed(buffer, position, limit);
+                if (lineEnd < 0 && !endOfInput) {
+                    break; // Incomplete line, read the rest first
+                }
+                int next = lineEnd < 0 ? limit : lineEnd + 1;
+                int end = lineEnd < 0 ? limit : lineEnd;
+                if (end > position && buffer.get(end - 1) == '\r') {
+                    end--;
+                }
+                lineNumber++;
+                batch.bytes += next - position;
+                int first = parser.skipSpaces(position, end);
+                byte firstByte = first < end ? buffer.get(first) : 0;
+                boolean header = headerAllowed && ((firstByte >= 'a' && firstByte <= 'z') || (firstByte >= 'A' && firstByte <= 'Z'));
+                if (first < end && firstByte != '#' && !header) {
+                    headerAllowed = false;
+                    batch.add(lineNumber, parser.parse(first, end, batch.cash));
+                    if (batch.size == batchSize) {
+                        worker.submit(batch);
+                        batch = worker.nextFree();
+                    }
+                }
+                position = next;
+            }
+            buffer.limit(limit).position(position);
+            buffer.compact();
+            if (!buffer.hasRemaining() && !endOfInput) {
+                throw new IOException("Line " + (lineNumber + 1) + " is longer than " + BUFFER_SIZE + " bytes.");
+            }
+        }
+        if (batch.size > 0 || batch.bytes > 0) {
+            worker.submit(batch);
+        }
+    }
+
+    /**
+     * Finds the next line feed in the buffer.
+     *
+     * @return The index of the line feed, or -1 if there is none before the limit.
+     */
+    private static int indexOfLineFeed(ByteBuffer buffer, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Prices a request against the catalog and calculates its change with a controller.
+     *
+     * @param controller The controller calculating the change.
+     * @param request    The purchase request.
+     * @return The outcome of the purchase.
+     */
+    private static TransactionResult sell(VendingMachineController controller, VendingMachineRequest request) {
+        Product product = request.getProduct();
+        int selectionNumber = request.getSelectionNumber();
+        if (product == null || product.isEmpty()) {
+            return new TransactionResult(selectionNumber, null, TransactionStatus.INVALID_PRODUCT, null, 0);
+        }
+        TransactionStatus status;
+        CashBundle change = null;
+        if (!product.isSoldIndividually()) {
+            status = TransactionStatus.NOT_SOLD_INDIVIDUALLY;
+        } else if (request.getCash().getTotal() < product.getPrice()) {
+            status = TransactionStatus.INSUFFICIENT_CASH;
+        } else {
+            change = controller.calculateChange(request);
+            status = change != null ? TransactionStatus.SUCCESS : TransactionStatus.EXACT_CHANGE_ONLY;
+        }
+        return new TransactionResult(selectionNumber, product, status, change, product.getStock());
+    }
+
+    /**
+     * The Batch class holds a run of parsed requests and the buffer their results are formatted into.
+     * Batches are reused, so their arrays are allocated once per replay.
+     */
+    private final class Batch {
+        private final VendingMachineRequest[] requests;
+        private final long[] lineNumbers;
+        private final byte[] output;
+        private final int[] cash = new int[DENOMINATIONS];
+        private int size;
+        private long bytes;
+        private boolean last;
+
+        Batch(int capacity) {
+            requests = new VendingMachineRequest[capacity];
+            lineNumbers = new long[capacity];
+            output = new byte[capacity * MAX_OUTPUT_LINE];
+        }
+
+        /**
+         * Adds a request, or null for a malformed line.
+         */
+        void add(long lineNumber, VendingMachineRequest request) {
+            lineNumbers[size] = lineNumber;
+            requests[size] = request;
+            size++;
+        }
+
+        /**
+         * Empties the batch so it can be filled again.
+         */
+        void clear() {
+            Arrays.fill(requests, 0, size, null);
+            size = 0;
+            bytes = 0;
+        }
+    }
+
+    /**
+     * The Worker class processes batches in order on its own thread and writes their results.
+     */
+    private final class Worker implements Runnable {
+        private final OutputStream output;
+        private final BlockingQueue<Batch> full = new ArrayBlockingQueue<>(QUEUE_DEPTH + 1);
+        private final BlockingQueue<Batch> free = new ArrayBlockingQueue<>(QUEUE_DEPTH + 1);
+        private final IngestionReport report = new IngestionReport();
+        private volatile Throwable failure;
+        private long batchNumber;
+
+        Worker(OutputStream output) {
+            this.output = output;
+            for (int i = 0; i < QUEUE_DEPTH; i++) {
+                free.add(new Batch(batchSize));
+            }
+        }
+
+        /**
+         * Takes an empty batch to fill, waiting while the worker is behind.
+         */
+        Batch nextFree() throws IOException {
+            rethrow();
+            try {
+                return free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the batch worker.", e);
+            }
+        }
+
+        /**
+         * Hands a filled batch to the worker.
+         */
+        void submit(Batch batch) throws IOException {
+            rethrow();
+            try {
+                full.put(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the batch worker.", e);
+            }
+        }
+
+        /**
+         * Tells the worker that no more batches follow.
+         */
+        void finish() {
+            Batch end = new Batch(0);
+            end.last = true;
+            full.add(end); // Never blocks: the queue can hold every batch plus this one
+        }
+
+        /**
+         * Rethrows the failure of the worker, if any.
+         */
+        void rethrow() throws IOException {
+            Throwable error = failure;
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            if (error != null) {
+                throw new IOException(error);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Batch batch;
+                try {
+                    batch = full.take();
+                } catch (InterruptedException e) {
+                    failure = e;
+                    return;
+                }
+                if (batch.last) {
+                    return;
+                }
+                if (failure == null) {
+                    try {
+                        process(batch);
+                    } catch (Throwable e) {
+                        failure = e; // Keep recycling batches so the parser notices instead of blocking
+                    }
+                }
+                batch.clear();
+                free.add(batch);
+            }
+        }
+
+        /**
+         * Processes every request of a batch and writes the results.
+         */
+        private void process(Batch batch) throws IOException {
+            long start = System.nanoTime();
+            byte[] out = batch.output;
+            int length = 0;
+            for (int i = 0; i < batch.size; i++) {
+                VendingMachineRequest request = batch.requests[i];
+                length = putLong(out, length, batch.lineNumbers[i]);
+                out[length++] = ',';
+                if (request == null) {
+                    report.recordMalformed();
+                    length = putLong(out, length, -1);
+                    out[length++] = ',';
+                    length = putBytes(out, length, MALFORMED);
+                    length = putChange(out, length, null);
+                } else {
+                    TransactionResult result = processor.apply(request);
+                    report.record(result);
+                    length = putLong(out, length, request.getSelectionNumber());
+                    out[length++] = ',';
+                    length = putBytes(out, length, STATUS_NAMES[result.getStatus().ordinal()]);
+                    length = putChange(out, length, result.getChange());
+                }
+                out[length++] = '\n';
+            }
+            output.write(out, 0, length);
+            report.recordBatch(batch.bytes);
+            batchNumber++;
+            BatchListener current = listener;
+            if (current != null) {
+                current.batchCompleted(batchNumber, batch.size, batch.bytes, System.nanoTime() - start);
+            }
+        }
+
+        private int putChange(byte[] out, int at, CashBundle change) {
+            int[] counts = change != null ? change.toArray() : null;
+            for (int d = 0; d < DENOMINATIONS; d++) {
+                out[at++] = ',';
+                at = putLong(out, at, counts != null ? counts[d] : 0);
+            }
+            return at;
+        }
+
+        private int putBytes(byte[] out, int at, byte[] bytes) {
+            System.arraycopy(bytes, 0, out, at, bytes.length);
+            return at + bytes.length;
+        }
+
+        private int putLong(byte[] out, int at, long value) {
+            if (value < 0) {
+                out[at++] = '-';
+                value = -value;
+            }
+            int digits = 1;
+            for (long rest = value / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            for (int i = at + digits - 1; i >= at; i--) {
+                out[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            return at + digits;
+        }
+    }
+
+    /**
+     * The LineParser class turns one line of the input buffer into a request without copying it.
+     */
+    private static final class LineParser {
+        private final ByteBuffer buffer;
+        private int position;
+
+        LineParser(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Parses a line in either format.
+         *
+         * @param start The index of the first non-space byte of the line.
+         * @param end   The index after the last byte of the line.
+         * @param cash  A scratch array for the bill counts.
+         * @return The request, or null if the line is malformed.
+         */
+        VendingMachineRequest parse(int start, int end, int[] cash) {
+            try {
+                int selectionNumber = buffer.get(start) == '{' ? parseJson(start, end, cash) : parseCsv(start, end, cash);
+                return new VendingMachineRequest(selectionNumber, cash);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Parses {@code selection,fives,tens,twenties,fifties,hundreds}.
+         */
+        private int parseCsv(int start, int end, int[] cash) {
+            position = start;
+            int selectionNumber = parseInt(end);
+            position = skipSpaces(position, end);
+            expect(',', end);
+            int limit = buffer.limit();
+            buffer.limit(end).position(position);
+            try {
+                Cash.parseCash(buffer, cash);
+            } finally {
+                buffer.limit(limit);
+            }
+            if (buffer.position() != end) {
+                throw new NumberFormatException("Unexpected input after the bill counts");
+            }
+            return selectionNumber;
+        }
+
+        /**
+         * Parses a flat JSON object with a numeric {@code selection} and a five element {@code cash} array.
+         * Other members must be numbers and are ignored.
+         */
+        private int parseJson(int start, int end, int[] cash) {
+            position = start;
+            expect('{', end);
+            boolean hasSelection = false;
+            boolean hasCash = false;
+            int selectionNumber = 0;
+            position = skipSpaces(position, end);
+            if (position < end && buffer.get(position) == '}') {
+                throw new NumberFormatException("Empty request");
+            }
+            while (true) {
+                position = skipSpaces(position, end);
+                expect('"', end);
+                int keyStart = position;
+                while (position < end && buffer.get(position) != '"') {
+                    position++;
+                }
+                int keyEnd = position;
+                expect('"', end);
+                position = skipSpaces(position, end);
+                expect(':', end);
+                position = skipSpaces(position, end);
+                if (keyEquals(keyStart, keyEnd, SELECTION_KEY)) {
+                    selectionNumber = parseInt(end);
+                    hasSelection = true;
+                } else if (keyEquals(keyStart, keyEnd, CASH_KEY)) {
+                    expect('[', end);
+                    for (int d = 0; d < DENOMINATIONS; d++) {
+                        position = skipSpaces(position, end);
+                        cash[d] = parseInt(end);
+                        if (cash[d] < 0) {
+                            throw new NumberFormatException("Bill counts must be non-negative integers");
+                        }
+                        position = skipSpaces(position, end);
+                        expect(d < DENOMINATIONS - 1 ? ',' : ']', end);
+                    }
+                    hasCash = true;
+                } else {
+                    parseInt(end);
+                }
+                position = skipSpaces(position, end);
+                if (position < end && buffer.get(position) == ',') {
+                    position++;
+                    continue;
+                }
+                expect('}', end);
+                break;
+            }
+            if (skipSpaces(position, end) != end || !hasSelection || !hasCash) {
+                throw new NumberFormatException("Expected a selection and " + DENOMINATIONS + " bill counts");
+            }
+            return selectionNumber;
+        }
+
+        /**
+         * Parses an optionally negative integer at the current position.
+         */
+        private int parseInt(int end) {
+            boolean negative = position < end && buffer.get(position) == '-';
+            if (negative) {
+                position++;
+            }
+            int digitsStart = position;
+            long value = 0;
+            while (position < end) {
+                byte next = buffer.get(position);
+                if (next < '0' || next > '9') {
+                    break;
+                }
+                value = value * 10 + (next - '0');
+                if (value > Integer.MAX_VALUE) {
+                    throw new NumberFormatException("Number out of range");
+                }
+                position++;
+            }
+            if (position == digitsStart) {
+                throw new NumberFormatException("Expected a number");
+            }
+            return (int) (negative ? -value : value);
+        }
+
+        private void expect(char expected, int end) {
+            if (position >= end || buffer.get(position) != expected) {
+                throw new NumberFormatException("Expected '" + expected + "'");
+            }
+            position++;
+        }
+
+        private boolean keyEquals(int start, int end, byte[] key) {
+            if (end - start != key.length) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (buffer.get(start + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Skips spaces and tabs.
+         *
+         * @return The index of the first other byte, or end.
+         */
+        int skipSpaces(int from, int end) {
+            while (from < end && (buffer.get(from) == ' ' || buffer.get(from) == '\t')) {
+                from++;
+            }
+            return from;
+        }
+    }
+}
@@ -5,6 +5,7 @@
  */
 
 public class Calculator {
+    private final ChangeEngine changeEngine = new ChangeEngine();
 
     /**
      * 
@@ -41,4 +42,17 @@ public class Calculator {
 
         return change;
     }
+
+    /**
+     * Calculates change that can actually be paid out with the bills in the machine.
+     * The change table is only rebuilt when the inventory differs from the one of the previous call.
+     *
+     * @param amountMoneyToReturn Change of the customer
+     * @param inventory the bills currently held by the vending machine
+     * @return the change the customer will recieve, or null if the machine needs exact change
+     */
+    public CashBundle calculateChange(int amountMoneyToReturn, CashBundle inventory) {
+        changeEngine.update(inventory, amountMoneyToReturn);
+        return changeEngine.makeChange(amountMoneyToReturn);
+    }
 }
\ No newline at end of file
@@ -1,3 +1,5 @@
+import java.nio.ByteBuffer;
+
 /** The class Cash is that class used to initialize the Cash deniminations the customer can use
  * 
  * @author Ceriola, Antonio
@@ -7,6 +9,9 @@
 public enum Cash {
     FIVE(5), TEN(10),  TWENTY(20), FIFTY(50), HUNDRED(100);
 
+    private static final int DENOMINATIONS = values().length;
+    private static final ThreadLocal<int[]> scratch = ThreadLocal.withInitial(() -> new int[DENOMINATIONS]); // Counts parsed before a bundle is updated
+
     private int value;
 
     /**
@@ -23,14 +28,144 @@ public enum Cash {
      * @return returns the cash input in string form 
      */
     public static int[] parseCash(String cash){
-        String[] numberCashInText = cash.split(",");
-        int[] result = new int[numberCashInText.length];
-        for(int index=0;index<numberCashInText.length;index++){
-            result[index] = Integer.parseInt(numberCashInText[index]);
-        }
+        int[] result = new int[DENOMINATIONS];
+        parseCash(cash, 0, cash.length(), result);
         return result;
     }
 
+    /**
+     * Parses comma separated bill counts straight into the given cash bundle without creating garbage.
+     * The bundle is only updated once every count was parsed, so it is left unchanged if the input is invalid.
+     * 
+     * @param cash the cash the user inputs, one count per denomination
+     * @param into the cash bundle receiving the counts
+     * @throws NumberFormatException if the input does not hold exactly one non-negative count per denomination
+     */
+    public static void parseCash(CharSequence cash, CashBundle into){
+        int[] counts = scratch.get();
+        parseCash(cash, 0, cash.length(), counts);
+        into.set(counts);
+    }
+
+    /**
+     * Parses comma separated bill counts straight into the given array without creating garbage.
+     * 
+     * @param cash the cash the user inputs
+     * @param start the index of the first character to parse
+     * @param end the index after the last character to parse
+     * @param into the array receiving one count per denomination, indexed by {@link Cash#ordinal()}; its contents are unspecified if parsing fails
+     * @throws NumberFormatException if the input does not hold exactly one non-negative count per denomination
+     */
+    public static void parseCash(CharSequence cash, int start, int end, int[] into){
+        for (int index = 0; index < DENOMINATIONS; index++) {
+            int separator = nextSeparator(cash, start, end, index == DENOMINATIONS - 1);
+            into[index] = parseCount(cash, start, separator);
+            start = separator + 1;
+        }
+    }
+
+    /**
+     * Parses comma separated bill counts from a buffer of ASCII bytes into the given array without creating garbage.
+     * Parsing starts at the buffer's position and stops at its limit or at the first line break,
+     * which is left in the buffer so callers can read line based input record by record.
+     * 
+     * @param cash the buffer holding the cash input
+     * @param into the array receiving one count per denomination, indexed by {@link Cash#ordinal()}
+     * @throws NumberFormatException if the input does not hold exactly one non-negative count per denomination
+     */
+    public static void parseCash(ByteBuffer cash, int[] into){
+        for (int index = 0; index < DENOMINATIONS; index++) {
+            long count = -1;
+            boolean done = false;
+            boolean spaceAfterDigits = false;
+            while (cash.hasRemaining() && !done) {
+                byte next = cash.get(cash.position());
+                if (next == '\n' || next == '\r') {
+                    break;
+                }
+                cash.position(cash.position() + 1);
+                if (next >= '0' && next <= '9') {
+                    if (spaceAfterDigits) {
+                        throw new NumberFormatException("Bill counts must be non-negative integers");
+                    }
+                    count = (count < 0 ? 0 : count * 10) + (next - '0');
+                    if (count > Integer.MAX_VALUE) {
+                        throw new NumberFormatException("Bill count out of range");
+                    }
+                } else if (next == ',') {
+                    done = true;
+                } else if (next == ' ') {
+                    spaceAfterDigits = count >= 0;
+                } else {
+                    throw new NumberFormatException("Invalid character in cash input: " + (char) next);
+                }
+            }
+            if (count < 0) {
+                throw new NumberFormatException("Expected " + DENOMINATIONS + " non-negative bill counts");
+            }
+            if (done == (index == DENOMINATIONS - 1)) {
+                throw new NumberFormatException("Expected exactly " + DENOMINATIONS + " bill counts");
+            }
+            into[index] = (int) count;
+        }
+    }
+
+    /**
+     * Finds the comma ending the count that starts at the given index.
+     * 
+     * @param cash the cash the user inputs
+     * @param start the index where the count starts
+     * @param end the index after the last character to parse
+     * @param last true if the count is the last one and must not be followed by a comma
+     * @return the index of the comma, or end for the last count
+     */
+    private static int nextSeparator(CharSequence cash, int start, int end, boolean last){
+        for (int index = start; index < end; index++) {
+            if (cash.charAt(index) == ',') {
+                if (last) {
+                    throw new NumberFormatException("Expected exactly " + DENOMINATIONS + " bill counts");
+                }
+                return index;
+            }
+        }
+        if (!last) {
+            throw new NumberFormatException("Expected exactly " + DENOMINATIONS + " bill counts");
+        }
+        return end;
+    }
+
+    /**
+     * Parses a single non-negative bill count, ignoring surrounding spaces.
+     * 
+     * @param cash the cash the user inputs
+     * @param start the index where the count starts
+     * @param end the index after the count
+     * @return the parsed count
+     */
+    private static int parseCount(CharSequence cash, int start, int end){
+        while (start < end && cash.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && cash.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (start == end) {
+            throw new NumberFormatException("Missing bill count");
+        }
+        long count = 0;
+        for (int index = start; index < end; index++) {
+            char digit = cash.charAt(index);
+            if (digit < '0' || digit > '9') {
+                throw new NumberFormatException("Bill counts must be non-negative integers");
+            }
+            count = count * 10 + (digit - '0');
+            if (count > Integer.MAX_VALUE) {
+                throw new NumberFormatException("Bill count out of range");
+            }
+        }
+        return (int) count;
+    }
+
     /**
      * 
      * @return returns the value input by customer
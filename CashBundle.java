@@ -1,6 +1,7 @@
 /** 
  * The CashBundle class represents a bundle of cash with different denominations. 
  * It keeps track of the number of bills for each denomination (5, 10, 20, 50, 100).
+ * A CashBundle is a plain value; the bills held by a running machine live in a {@link CashVault}.
  * 
  * @author Ceriola, Antonio
  */
@@ -41,6 +42,15 @@ public class CashBundle {
         return total;
     }
 
+    /**
+     * Returns the number of bills per denomination, indexed by {@link Cash#ordinal()}.
+     * 
+     * @return A new array holding the counts of the cash bundle.
+     */
+    public int[] toArray() {
+        return new int[] {number5, number10, number20, number50, number100};
+    }
+
     /**
      *  Retrieves the number of bills for 5 denomination.
      * 
@@ -131,4 +141,17 @@ public class CashBundle {
         this.number100 = number100;
     }
 
+    /**
+     * Sets the number of bills of every denomination.
+     * 
+     * @param counts The number of bills per denomination, indexed by {@link Cash#ordinal()}.
+     */
+    public void set(int[] counts){
+        this.number5 = counts[Cash.FIVE.ordinal()];
+        this.number10 = counts[Cash.TEN.ordinal()];
+        this.number20 = counts[Cash.TWENTY.ordinal()];
+        this.number50 = counts[Cash.FIFTY.ordinal()];
+        this.number100 = counts[Cash.HUNDRED.ordinal()];
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,252 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The CashVault class holds the bills stored inside a vending machine and lets customer
+ * transactions and maintenance tasks update them concurrently.
+ *
+ * <p>
+ * The counts are kept in an immutable int array indexed by {@link Cash#ordinal()}. Every update
+ * builds the next array and publishes it with a single compare-and-set, so a deposit and the matching
+ * payout over several denominations are applied as one atomic step without any lock.
+ * Readers always see a consistent set of counts, which {@link #snapshot()} exposes as a {@link CashBundle}.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class CashVault {
+    private static final Cash[] DENOMINATIONS = Cash.values();
+
+    private final AtomicReference<int[]> counts;
+    private volatile CashVaultListener[] listeners = new CashVaultListener[0];
+
+    /**
+     * Creates a vault holding the specified number of bills per denomination.
+     *
+     * @param counts The number of bills for each denomination, in the same order as {@link CashBundle}.
+     */
+    public CashVault(int... counts) {
+        if (counts.length != DENOMINATIONS.length) {
+            throw new IllegalArgumentException("Expected " + DENOMINATIONS.length + " denominations but got " + counts.length);
+        }
+        for (int count : counts) {
+            if (count < 0) {
+                throw new IllegalArgumentException("Bill counts cannot be negative.");
+            }
+        }
+        this.counts = new AtomicReference<>(counts.clone());
+    }
+
+    /**
+     * Creates a vault holding the bills of the specified cash bundle.
+     *
+     * @param cashBundle The cash bundle to copy.
+     */
+    public CashVault(CashBundle cashBundle) {
+        this(cashBundle.toArray());
+    }
+
+    /**
+     * Retrieves the number of bills of the specified denomination.
+     *
+     * @param cash The denomination.
+     * @return The number of bills of that denomination in the vault.
+     */
+    public int getCount(Cash cash) {
+        return counts.get()[cash.ordinal()];
+    }
+
+    /**
+     * Calculates the total value of the bills in the vault.
+     *
+     * @return The total value of the vault.
+     */
+    public int getTotal() {
+        int[] current = counts.get();
+        int total = 0;
+        for (int i = 0; i < current.length; i++) {
+            total += current[i] * DENOMINATIONS[i].getValue();
+        }
+        return total;
+    }
+
+    /**
+     * Returns a consistent copy of the bills in the vault.
+     *
+     * @return A CashBundle holding the current number of bills per denomination.
+     */
+    public CashBundle snapshot() {
+        return new CashBundle(counts.get());
+    }
+
+    /**
+     * Copies the current number of bills per denomination into the specified array.
+     *
+     * @param into The array receiving the counts, indexed by {@link Cash#ordinal()}.
+     */
+    public void snapshot(int[] into) {
+        System.arraycopy(counts.get(), 0, into, 0, DENOMINATIONS.length);
+    }
+
+    /**
+     * Adds bills to the vault.
+     *
+     * @param deposit The number of bills to add per denomination.
+     */
+    public void deposit(int... deposit) {
+        transact(deposit, null);
+    }
+
+    /**
+     * Removes bills from the vault if all of them are available.
+     *
+     * @param payout The number of bills to remove per denomination.
+     * @return true if the bills were removed, false if the vault does not hold enough of them.
+     */
+    public boolean payout(int... payout) {
+        return transact(null, payout);
+    }
+
+    /**
+     * Adds the deposited bills and removes the paid out bills as one atomic operation.
+     * Nothing changes if the vault, after the deposit, does not hold enough bills for the payout.
+     *
+     * @param deposit The number of bills to add per denomination, or null for none.
+     * @param payout  The number of bills to remove per denomination, or null for none.
+     * @return true if the operation was applied, false if the payout could not be covered.
+     */
+    public boolean transact(int[] deposit, int[] payout) {
+        while (true) {
+            int[] current = counts.get();
+            int[] next = new int[DENOMINATIONS.length];
+            for (int i = 0; i < next.length; i++) {
+                next[i] = current[i] + (deposit == null ? 0 : deposit[i]) - (payout == null ? 0 : payout[i]);
+                if (next[i] < 0) {
+                    return false;
+                }
+            }
+            if (counts.compareAndSet(current, next)) {
+                fireCashChanged();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Accepts the customer's bills and pays out the specified amount of change as one atomic operation.
+     * The change is paid from the bills in the vault when they are enough, so the engine's table is reused
+     * as long as the vault does not change. Otherwise the customer's own bills are used as well, if any of them
+     * is small enough to be part of the change.
+     *
+     * @param deposit      The number of bills entered by the customer per denomination.
+     * @param changeAmount The amount of change to return.
+     * @param engine       The change engine used to find a payout; it must not be shared between threads.
+     * @param change       The array receiving the change per denomination.
+     * @return true if the exchange was applied, false if the vault needs exact change.
+     */
+    public boolean exchange(int[] deposit, int changeAmount, ChangeEngine engine, int[] change) {
+        while (true) {
+            int[] current = counts.get();
+            int[] next = current.clone();
+            if (!settle(next, deposit, changeAmount, engine, change)) {
+                return false;
+            }
+            if (counts.compareAndSet(current, next)) {
+                fireCashChanged();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Settles one purchase on plain bill counts, with the same rules as {@link #exchange(int[], int, ChangeEngine, int[])}:
+     * the change is paid from the bills already there when they are enough, and with the customer's bills added
+     * otherwise. This is the only implementation of those rules; the vault applies it to the next version of its
+     * counts, and the {@link FloatOptimizer} and the {@link FleetSimulator} apply it to counts they own.
+     *
+     * @param counts       The number of bills per denomination, updated only if the change is paid.
+     * @param deposit      The number of bills entered by the customer per denomination.
+     * @param changeAmount The amount of change to return.
+     * @param engine       The change engine used to find a payout; it must not be shared between threads.
+     * @param change       The array receiving the change per denomination.
+     * @return true if the change was paid, false if exact change is needed; the counts are then unchanged.
+     */
+    static boolean settle(int[] counts, int[] deposit, int changeAmount, ChangeEngine engine, int[] change) {
+        boolean paid = changeAmount == 0;
+        if (paid) {
+            Arrays.fill(change, 0);
+        } else {
+            engine.update(counts, changeAmount);
+            paid = engine.makeChange(changeAmount, change);
+        }
+        for (int i = 0; i < DENOMINATIONS.length; i++) {
+            counts[i] += deposit[i];
+        }
+        if (!paid && ChangeEngine.hasBillUpTo(deposit, changeAmount)) {
+            engine.update(counts, changeAmount);
+            paid = engine.makeChange(changeAmount, change);
+        }
+        int[] taken = paid ? change : deposit; // Without change the customer takes their bills back
+        for (int i = 0; i < DENOMINATIONS.length; i++) {
+            counts[i] -= taken[i];
+        }
+        return paid;
+    }
+
+    /**
+     * Raises the number of bills of the specified denomination to the target if it is below it.
+     *
+     * @param cash   The denomination to replenish.
+     * @param target The number of bills the denomination should have at least.
+     * @return The number of bills added, 0 if the denomination was already at or above the target.
+     */
+    public int topUp(Cash cash, int target) {
+        int index = cash.ordinal();
+        while (true) {
+            int[] current = counts.get();
+            if (current[index] >= target) {
+                return 0;
+            }
+            int[] next = current.clone();
+            next[index] = target;
+            if (counts.compareAndSet(current, next)) {
+                fireCashChanged();
+                return target - current[index];
+            }
+        }
+    }
+
+    /**
+     * Registers a listener that is notified whenever the bills in this vault change.
+     *
+     * @param listener The listener to add.
+     */
+    public synchronized void addCashVaultListener(CashVaultListener listener) {
+        CashVaultListener[] grown = Arrays.copyOf(listeners, listeners.length + 1);
+        grown[grown.length - 1] = listener;
+        listeners = grown;
+    }
+
+    /**
+     * Removes a previously registered listener.
+     *
+     * @param listener The listener to remove.
+     */
+    public synchronized void removeCashVaultListener(CashVaultListener listener) {
+        List<CashVaultListener> remaining = new ArrayList<>(Arrays.asList(listeners));
+        remaining.remove(listener);
+        listeners = remaining.toArray(new CashVaultListener[0]);
+    }
+
+    /**
+     * Notifies the registered listeners of a change. Iterates over the listener array directly so the sale path does not allocate.
+     */
+    private void fireCashChanged() {
+        CashVaultListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            current[i].cashChanged(this);
+        }
+    }
+}
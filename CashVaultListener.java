@@ -0,0 +1,21 @@
+/**
+ * The CashVaultListener interface is implemented by classes that want to observe the bills of a {@link CashVault},
+ * such as maintenance dashboards, without polling.
+ *
+ * <p>
+ * Listeners are called synchronously on the thread that changed the vault, right after the change was published,
+ * so they must be fast and must not block. Register them with {@link CashVault#addCashVaultListener(CashVaultListener)}.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public interface CashVaultListener {
+
+    /**
+     * Called after the bills in a vault changed. The new counts can be read with {@link CashVault#snapshot(int[])};
+     * they may already include later changes.
+     *
+     * @param cashVault The vault whose bills changed.
+     */
+    void cashChanged(CashVault cashVault);
+}
@@ -0,0 +1,241 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The Catalog class is an immutable, versioned view of the products and product sets the vending machines can offer.
+ * The current catalog is published by {@link Product#getCatalog()} through a single volatile reference; writers never
+ * change a published catalog but build the next version and swap it in, so readers get a consistent view without
+ * locks or waiting, and never see a list change while they iterate over it.
+ *
+ * <p>
+ * Every version keeps a {@link ProductIndex}, so {@link #get(int)} costs one array or hash map read, and an identity
+ * set of its products, so {@link #contains(Product)} does not scan the list. Every version also snapshots the prices
+ * of its products, of the main products of its sets and of the products they include, read as one price sheet, and
+ * the contents of its sets. Repricing a product or editing a set of the catalog publishes a new version, so
+ * {@link #getPrice(Product)}, {@link #getIncludedProducts(ProductSet)} and {@link #getTotalPrice(ProductSet)} keep
+ * answering for the version a reader holds. The products themselves stay the same objects from version to version,
+ * so their stock, which changes with every sale, is not versioned.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class Catalog {
+    private final long version;
+    private final List<Product> products;
+    private final List<ProductSet> productSets;
+    private final Set<Product> members;
+    private final ProductIndex index;
+    private final Map<Product, Integer> prices = new IdentityHashMap<>();
+    private final Map<ProductSet, Map<Product, Integer>> setContents = new IdentityHashMap<>();
+
+    /**
+     * Creates the first version of a catalog.
+     *
+     * @param products    The products of the catalog.
+     * @param productSets The product sets of the catalog.
+     */
+    public Catalog(Collection<Product> products, Collection<ProductSet> productSets) {
+        this(0, new ArrayList<>(products), new ArrayList<>(productSets));
+    }
+
+    /**
+     * Creates a version of a catalog, taking ownership of the lists.
+     */
+    private Catalog(long version, List<Product> products, List<ProductSet> productSets) {
+        this(version, Collections.unmodifiableList(products), Collections.unmodifiableList(productSets), members(products));
+    }
+
+    /**
+     * Creates a version of a catalog sharing already immutable lists and member set, indexed anew.
+     */
+    private Catalog(long version, List<Product> products, List<ProductSet> productSets, Set<Product> members) {
+        this(version, products, productSets, members, new ProductIndex(products));
+    }
+
+    /**
+     * Creates a version of a catalog sharing already immutable lists, member set and index,
+     * with the current prices and set contents.
+     */
+    private Catalog(long version, List<Product> products, List<ProductSet> productSets, Set<Product> members, ProductIndex index) {
+        this.version = version;
+        this.products = products;
+        this.productSets = productSets;
+        this.members = members;
+        this.index = index;
+        for (ProductSet productSet : productSets) {
+            setContents.put(productSet, productSet.getIncludedProducts()); // Copied on write, so this is a snapshot
+        }
+        while (true) {
+            long priceVersion = Product.beginPriceRead();
+            for (Product product : products) {
+                prices.put(product, product.getPrice());
+            }
+            for (Map.Entry<ProductSet, Map<Product, Integer>> entry : setContents.entrySet()) {
+                prices.put(entry.getKey().getMainProduct(), entry.getKey().getMainProduct().getPrice());
+                for (Product included : entry.getValue().keySet()) {
+                    prices.put(included, included.getPrice());
+                }
+            }
+            if (Product.validatePriceRead(priceVersion)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the version of this catalog, increased by every change
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the products of the catalog, as a read-only list
+     */
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    /**
+     * @return the product sets of the catalog, as a read-only list
+     */
+    public List<ProductSet> getProductSets() {
+        return productSets;
+    }
+
+    /**
+     * Gets the product with the specified selection number.
+     *
+     * @param selectionNumber The selection number of the product to find.
+     * @return The first product of the catalog with that selection number, or null if there is none.
+     */
+    public Product get(int selectionNumber) {
+        return index.get(selectionNumber);
+    }
+
+    /**
+     * Tells whether a product is in the catalog. Products are compared by identity.
+     *
+     * @param product The product to look for.
+     * @return true if this version of the catalog holds the product.
+     */
+    public boolean contains(Product product) {
+        return members.contains(product);
+    }
+
+    /**
+     * Tells whether a product set is in the catalog. Sets are compared by identity.
+     *
+     * @param productSet The product set to look for.
+     * @return true if this version of the catalog holds the product set.
+     */
+    public boolean contains(ProductSet productSet) {
+        return setContents.containsKey(productSet);
+    }
+
+    /**
+     * Tells whether this version snapshots the price of a product: a product of the catalog,
+     * the main product of one of its sets or a product one of its sets includes.
+     *
+     * @param product The product to look for.
+     * @return true if {@link #getPrice(Product)} answers for this version.
+     */
+    public boolean hasPrice(Product product) {
+        return prices.containsKey(product);
+    }
+
+    /**
+     * Gets the price of a product in this version.
+     *
+     * @param product The product.
+     * @return The price the product had when this version was published, or its current price if this version
+     *         does not hold it.
+     */
+    public int getPrice(Product product) {
+        Integer price = prices.get(product);
+        return price != null ? price : product.getPrice();
+    }
+
+    /**
+     * Gets the contents of a product set in this version.
+     *
+     * @param productSet The product set.
+     * @return The included products and their quantities when this version was published, or the current ones
+     *         if this version does not hold the set.
+     */
+    public Map<Product, Integer> getIncludedProducts(ProductSet productSet) {
+        Map<Product, Integer> contents = setContents.get(productSet);
+        return contents != null ? contents : productSet.getIncludedProducts();
+    }
+
+    /**
+     * Calculates the total price of a product set in this version.
+     *
+     * @param productSet The product set.
+     * @return The price of the main product plus the prices of the included products times their quantities.
+     */
+    public int getTotalPrice(ProductSet productSet) {
+        int totalPrice = getPrice(productSet.getMainProduct());
+        for (Map.Entry<Product, Integer> entry : getIncludedProducts(productSet).entrySet()) {
+            totalPrice += getPrice(entry.getKey()) * entry.getValue();
+        }
+        return totalPrice;
+    }
+
+    /**
+     * Builds the next version with more products.
+     *
+     * @param added The products to add after the current ones.
+     * @return The next version of the catalog.
+     */
+    public Catalog withProducts(Collection<Product> added) {
+        List<Product> grown = new ArrayList<>(products.size() + added.size());
+        grown.addAll(products);
+        grown.addAll(added);
+        return new Catalog(version + 1, Collections.unmodifiableList(grown), productSets, members(grown));
+    }
+
+    /**
+     * Builds the next version holding other products and product sets, for example a restored catalog.
+     *
+     * @param newProducts    The products of the next version.
+     * @param newProductSets The product sets of the next version.
+     * @return The next version of the catalog.
+     */
+    public Catalog withContents(Collection<Product> newProducts, Collection<ProductSet> newProductSets) {
+        return new Catalog(version + 1, new ArrayList<>(newProducts), new ArrayList<>(newProductSets));
+    }
+
+    /**
+     * Builds the next version with the same contents, re-indexed after selection numbers changed.
+     *
+     * @return The next version of the catalog.
+     */
+    public Catalog reindexed() {
+        return new Catalog(version + 1, products, productSets, members);
+    }
+
+    /**
+     * Builds the next version with the same products and index, snapshotting the current prices and set contents,
+     * after a product of the catalog was repriced or one of its sets was edited.
+     *
+     * @return The next version of the catalog.
+     */
+    public Catalog nextVersion() {
+        return new Catalog(version + 1, products, productSets, members, index);
+    }
+
+    /**
+     * Builds the identity set of a list of products.
+     */
+    private static Set<Product> members(List<Product> products) {
+        Set<Product> members = Collections.newSetFromMap(new IdentityHashMap<>(products.size() * 2));
+        members.addAll(products);
+        return members;
+    }
+}
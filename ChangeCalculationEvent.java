@@ -0,0 +1,16 @@
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The ChangeCalculationEvent class records one call of
+ * {@link VendingMachineController#calculateChange(VendingMachineRequest)}: the price of the product,
+ * the change paid out per denomination and whether the change could be paid.
+ *
+ * @author Ceriola, Antonio
+ */
+@Name("vendingmachine.ChangeCalculation")
+@Label("Change Calculation")
+@Description("Change calculated for a purchase request")
+public class ChangeCalculationEvent extends VendingMachineEvent {
+}
@@ -0,0 +1,184 @@
+import java.util.Arrays;
+
+/**
+ * The ChangeEngine class computes change that the vending machine can actually pay out
+ * with the bills it holds. Unlike the greedy division in {@link Calculator}, it takes the
+ * number of bills available per denomination into account and reports "exact change only"
+ * when no combination of the available bills adds up to the requested amount.
+ *
+ * <p>
+ * The engine precomputes a reachability table for a given inventory once in {@link #update(int[], int)}.
+ * For every reachable amount the table stores how many bills of each denomination to use, so
+ * {@link #canMakeChange(int)} and {@link #makeChange(int, int[])} cost O(denominations) and do not allocate.
+ * The table is only rebuilt when the bill counts change or a larger amount than it covers is requested, so
+ * repeated requests against the same inventory, such as a run of "exact change only" failures, cost O(denominations) too.
+ * Counts are indexed by {@link Cash#ordinal()}, in the same order as the {@link CashBundle} constructor.
+ * An engine instance is not thread safe; use one engine per thread.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class ChangeEngine {
+    private static final Cash[] DENOMINATIONS = Cash.values();
+    private static final int UNIT = Cash.FIVE.getValue(); // Every denomination is a multiple of the smallest bill
+
+    private final int[] available = new int[DENOMINATIONS.length];
+    private final int[] requested = new int[DENOMINATIONS.length]; // Counts of the last CashBundle, compared with the table's
+    private int[][] used = new int[DENOMINATIONS.length][0]; // used[ordinal][units]: bills of that denomination, or -1 if not payable
+    private int limit = -1; // Largest amount (in units) covered by the table
+
+    /**
+     * Rebuilds the reachability table for the given inventory, covering every amount it can pay.
+     *
+     * @param inventory The bills currently held by the vending machine.
+     */
+    public void update(CashBundle inventory) {
+        update(inventory, inventory.getTotal());
+    }
+
+    /**
+     * Makes sure the reachability table covers amounts up to maxAmount for the given inventory,
+     * rebuilding it only if the inventory differs from the one it was built for or maxAmount is larger.
+     *
+     * @param inventory The bills currently held by the vending machine.
+     * @param maxAmount The largest amount of change that will be requested.
+     */
+    public void update(CashBundle inventory, int maxAmount) {
+        requested[Cash.FIVE.ordinal()] = inventory.getNumber5();
+        requested[Cash.TEN.ordinal()] = inventory.getNumber10();
+        requested[Cash.TWENTY.ordinal()] = inventory.getNumber20();
+        requested[Cash.FIFTY.ordinal()] = inventory.getNumber50();
+        requested[Cash.HUNDRED.ordinal()] = inventory.getNumber100();
+        update(requested, maxAmount);
+    }
+
+    /**
+     * Makes sure the reachability table covers amounts up to maxAmount for the given bill counts,
+     * rebuilding it only if the counts differ from the ones it was built for or maxAmount is larger.
+     * The table arrays are reused when they are already large enough.
+     *
+     * @param counts    The number of bills per denomination, indexed by {@link Cash#ordinal()}.
+     * @param maxAmount The largest amount of change that will be requested.
+     */
+    public void update(int[] counts, int maxAmount) {
+        if (limit >= 0 && Math.max(maxAmount, 0) / UNIT <= limit
+                && Arrays.equals(available, 0, available.length, counts, 0, available.length)) {
+            return; // Same inventory, already covered
+        }
+        System.arraycopy(counts, 0, available, 0, available.length);
+        rebuild(maxAmount);
+    }
+
+    /**
+     * Checks whether any of the specified bills is small enough to be part of a payout of the specified amount,
+     * so that adding them to an inventory could make the amount payable.
+     *
+     * @param bills  The number of bills per denomination, indexed by {@link Cash#ordinal()}.
+     * @param amount The amount of change to pay out.
+     * @return true if at least one of the bills is worth no more than the amount.
+     */
+    public static boolean hasBillUpTo(int[] bills, int amount) {
+        for (int i = 0; i < DENOMINATIONS.length && DENOMINATIONS[i].getValue() <= amount; i++) {
+            if (bills[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the inventory can pay out the specified amount exactly.
+     *
+     * @param amount The amount of change to pay out.
+     * @return true if the amount can be paid with the available bills, false if exact change is required.
+     */
+    public boolean canMakeChange(int amount) {
+        if (amount < 0 || amount % UNIT != 0 || amount / UNIT > limit) {
+            return false;
+        }
+        return used[DENOMINATIONS.length - 1][amount / UNIT] >= 0;
+    }
+
+    /**
+     * Computes a feasible payout for the specified amount and writes it into change.
+     * Larger bills are preferred over smaller ones whenever the inventory allows it.
+     * The change array is left untouched when no payout exists.
+     *
+     * @param amount The amount of change to pay out.
+     * @param change The array receiving the number of bills per denomination, indexed by {@link Cash#ordinal()}.
+     * @return true if a payout was found, false if exact change is required.
+     */
+    public boolean makeChange(int amount, int[] change) {
+        if (!canMakeChange(amount)) {
+            return false;
+        }
+        int remaining = amount / UNIT;
+        for (int i = DENOMINATIONS.length - 1; i >= 0; i--) {
+            int count = used[i][remaining];
+            change[i] = count;
+            remaining -= count * units(i);
+        }
+        return true;
+    }
+
+    /**
+     * Computes a feasible payout for the specified amount.
+     *
+     * @param amount The amount of change to pay out.
+     * @return The CashBundle representing the change, or null if exact change is required.
+     */
+    public CashBundle makeChange(int amount) {
+        int[] change = new int[DENOMINATIONS.length];
+        return makeChange(amount, change) ? new CashBundle(change) : null;
+    }
+
+    /**
+     * Fills the table from the smallest denomination up to the largest. For each denomination the
+     * table stores the most bills of it that still leave a remainder payable with the smaller
+     * denominations, which lets {@link #makeChange(int, int[])} rebuild the payout from the largest
+     * denomination downwards. Within each residue class a forward-only pointer tracks the earliest
+     * payable remainder, so a whole level is filled in linear time.
+     *
+     * @param maxAmount The largest amount of change that will be requested.
+     */
+    private void rebuild(int maxAmount) {
+        limit = Math.max(maxAmount, 0) / UNIT;
+        if (used[0].length <= limit) {
+            used = new int[DENOMINATIONS.length][limit + 1];
+        }
+        int[] previous = null;
+        for (int i = 0; i < DENOMINATIONS.length; i++) {
+            int[] current = used[i];
+            int value = units(i);
+            int count = available[i];
+            for (int residue = 0; residue < value && residue <= limit; residue++) {
+                int earliest = residue; // Earliest amount in this residue class that may still be payable without this bill
+                for (int amount = residue; amount <= limit; amount += value) {
+                    earliest = (int) Math.max(earliest, amount - (long) count * value);
+                    while (earliest <= amount && !payable(previous, earliest)) {
+                        earliest += value;
+                    }
+                    current[amount] = earliest <= amount ? (amount - earliest) / value : -1;
+                }
+            }
+            previous = current;
+        }
+    }
+
+    /**
+     * @param previous The table of the next smaller denomination, or null for the smallest one.
+     * @param amount   The amount in units.
+     * @return true if the amount can be paid with the smaller denominations
+     */
+    private static boolean payable(int[] previous, int amount) {
+        return previous == null ? amount == 0 : previous[amount] >= 0;
+    }
+
+    /**
+     * @param ordinal The ordinal of the denomination.
+     * @return the value of the denomination in units of the smallest bill
+     */
+    private static int units(int ordinal) {
+        return DENOMINATIONS[ordinal].getValue() / UNIT;
+    }
+}
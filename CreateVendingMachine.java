@@ -1,15 +1,19 @@
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
-import javafx.scene.layout.ColumnConstraints;
-import javafx.scene.layout.GridPane;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import javafx.scene.Node;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
 
 /**
@@ -20,12 +24,15 @@ import java.util.List;
  */
 public class CreateVendingMachine {
 
+    private static final int PRODUCTS_PER_ROW = 5;
+
     private Slots slots;
     private int numSlots;
     private int numItemsPerSlot;
     private VBox root;
-    private List<Product> selectedProducts = new ArrayList<>();
-    private List<VBox> slotBoxes = new ArrayList<>();
+    private SlotSelectionModel selectionModel; // Product picked for each slot, kept outside the recycled cells
+    private Product[] presetProducts = new Product[0]; // Products offered by the wizard, five per slot row
+    private ListView<Integer> slotListView;
     private VendingMachine vendingMachine;
 
     /**
@@ -38,6 +45,22 @@ public class CreateVendingMachine {
         this.numSlots = numSlots;
         this.numItemsPerSlot = numItemsPerSlot;
         this.slots = new Slots(numSlots, numItemsPerSlot);
+        this.selectionModel = new SlotSelectionModel(numSlots, numItemsPerSlot);
+    }
+
+    /**
+     * Constructs a CreateVendingMachine for a vending machine that was already configured,
+     * for example one restored from a {@link MachineSnapshot}.
+     *
+     * The products stored in the slots become the selected products.
+     *
+     * @param slots The slots of the vending machine, already filled.
+     */
+    public CreateVendingMachine(Slots slots) {
+        this.numSlots = slots.getNumSlots();
+        this.numItemsPerSlot = slots.getNumItemsPerSlot();
+        this.slots = slots;
+        this.selectionModel = SlotSelectionModel.of(slots);
     }
 
      /**
@@ -52,6 +75,11 @@ public class CreateVendingMachine {
      /**
      * Creates and returns a VBox containing the graphical user interface for configuring item slots in the vending machine.
      * Users can select items to be placed in each slot using checkboxes.
+     * Every slot row offers five preset products, and checking one of them makes it the product of that slot.
+     * The first rows offer the preset products in order; once all of them have been offered, the next rows
+     * start again from the first preset product, so every slot of a large machine can be filled.
+     * The rows are shown in a virtualized list: cells are only created for the visible rows and are reused
+     * while scrolling, so the wizard opens just as fast for thousands of slots as for a few.
      *
      * @param primaryStage   The primary stage of the JavaFX application.
      * @param root           The root VBox of the user interface.
@@ -60,99 +88,74 @@ public class CreateVendingMachine {
      * @return A VBox containing the item slots graphical user interface.
      */
     public VBox createItemSlotsGUI(Stage primaryStage, VBox root, int numSlots, int numItemsPerSlot) {
-    VBox container = new VBox();
-    GridPane gridPane = new GridPane();
-    gridPane.setHgap(10);
-    gridPane.setVgap(10);
-    gridPane.setPadding(new Insets(10));
-    createItemSlots();
-
-    for (int i = 0; i < numSlots; i++) {
-        VBox slotBox = new VBox();
-        slotBox.setId("slot-" + (i + 1)); // Ensure correct id assignment (e.g., "slot-1", "slot-2", etc.)
-        slotBox.getChildren().add(new Label("Select items for slot " + (i + 1) + ":"));
-        slotBoxes.add(slotBox);
-    }
-    
-        int numColumns = 5;
-        gridPane.getColumnConstraints().clear();
-        for (int i = 0; i < numColumns; i++) {
-            ColumnConstraints column = new ColumnConstraints();
-            column.setPercentWidth(100.0 / numColumns);
-            gridPane.getColumnConstraints().add(column);
-        }
-    
-        int rowIndex = 1;
-    for (Product preSetProduct : Product.getCustomProducts()) {
-            VBox itemBox = new VBox();
-
-            CheckBox selectedCheckBox = new CheckBox("Select");
-            Label nameLabel = new Label("Name: " + preSetProduct.getName());
-            Label priceLabel = new Label("Price: " + preSetProduct.getPrice());
-            Label caloriesLabel = new Label("Calories: " + preSetProduct.getCalories());
-            Label soldIndividuallyLabel = new Label("Can be sold individually: " + preSetProduct.isSoldIndividually());
+        VBox container = new VBox();
+        createItemSlots();
+        presetProducts = Product.getCustomProducts();
 
-            itemBox.getChildren().addAll(selectedCheckBox, nameLabel, priceLabel, caloriesLabel, soldIndividuallyLabel);
+        ObservableList<Integer> slotRows = FXCollections.observableList(new SlotRange(numSlots));
+        slotListView = new ListView<>(slotRows);
+        slotListView.setCellFactory(view -> new SlotCell());
+        slotListView.setPadding(new Insets(10));
+        VBox.setVgrow(slotListView, Priority.ALWAYS);
 
-            // Set the event handler for the select button
-            selectedCheckBox.setOnAction(e -> handleProductSelection(selectedCheckBox));
+        Button selectAllButton = new Button("Select All Slots");
+        selectAllButton.setOnAction(e -> selectAllSlots());
+        Button selectNoneButton = new Button("Clear All Slots");
+        selectNoneButton.setOnAction(e -> {
+            selectionModel.deselectAll();
+            slotListView.refresh();
+        });
+        HBox bulkButtons = new HBox(10, selectAllButton, selectNoneButton);
+        bulkButtons.setPadding(new Insets(10));
 
-            int columnIndex = rowIndex % numColumns;
-            int slotIndex = (rowIndex - 1) / numColumns;
-            gridPane.add(itemBox, columnIndex, slotIndex);
-    
-            // Set the id for each slot VBox
-            itemBox.setId("slot-" + (slotIndex + 1));
-    
-            rowIndex++;
-        }
-    
-        // Add slot VBox elements to the container
-        for (int i = 0; i < numSlots; i++) {
-            container.getChildren().add(slotBoxes.get(i));
-        }
-    
-        container.getChildren().addAll(gridPane);
+        container.getChildren().add(bulkButtons);
+        container.getChildren().add(slotListView);
         container.getChildren().add(createVendingMachineButton(primaryStage));
         return container;
     }
 
     /**
-     * Event handler for product selection checkboxes. Adds or removes selected products from the vending machine.
+     * Gets the preset product offered in a column of a slot row.
      *
-     * @param selectedCheckBox The checkbox representing the product selection.
+     * @param slotIndex The index of the slot.
+     * @param column    The column of the row.
+     * @return The index of the preset product, or -1 if the row has no such column.
      */
-    private void handleProductSelection(CheckBox selectedCheckBox) {
-        VBox itemBox = (VBox) selectedCheckBox.getParent();
-        int slotIndex = Integer.parseInt(itemBox.getId().replace("slot-", "")) - 1; // Extract slot index from VBox ID
-    
-        if (selectedCheckBox.isSelected()) {
-            // Set a background color for selected CheckBox
-            selectedCheckBox.setStyle("-fx-background-color: green;");
-    
-            // Get the product details from the VBox
-            Label nameLabel = (Label) itemBox.getChildren().get(1); // Assuming nameLabel is at index 1
-            Label priceLabel = (Label) itemBox.getChildren().get(2); // Assuming priceLabel is at index 2
-            Label caloriesLabel = (Label) itemBox.getChildren().get(3); // Assuming caloriesLabel is at index 3
-            Label soldIndividuallyLabel = (Label) itemBox.getChildren().get(4); // Assuming soldIndividuallyLabel is at index 4
-    
-            // Extract the product details from the labels
-            String name = nameLabel.getText().replace("Name: ", "");
-            int price = Integer.parseInt(priceLabel.getText().replace("Price: ", ""));
-            int calories = Integer.parseInt(caloriesLabel.getText().replace("Calories: ", ""));
-            boolean soldIndividually = Boolean.parseBoolean(soldIndividuallyLabel.getText().replace("Can be sold individually: ", ""));
-    
-            // Create the Product object and add it to the selectedProducts list
-            selectedProducts.add(new Product(slotIndex + 1, numItemsPerSlot, price, calories, soldIndividually, name));
-            } else {
-            // Reset background color for unselected CheckBox
-            selectedCheckBox.setStyle("");
-    
-            // Remove the product from the selectedProducts list if it was unselected
-            selectedProducts.removeIf(product -> product.getSelectionNumber() == slotIndex + 1);
+    private int presetIndexOf(int slotIndex, int column) {
+        if (column >= Math.min(PRODUCTS_PER_ROW, presetProducts.length)) {
+            return -1;
+        }
+        return (int) (((long) slotIndex * PRODUCTS_PER_ROW + column) % presetProducts.length);
+    }
+
+    /**
+     * Handles a product selection checkbox. Makes the product the product of the slot, or empties the slot.
+     *
+     * @param slotIndex   The slot the product goes into.
+     * @param presetIndex The index of the preset product.
+     * @param selected    true if the product was selected, false if it was unselected.
+     */
+    private void handleProductSelection(int slotIndex, int presetIndex, boolean selected) {
+        if (selected) {
+            selectionModel.select(slotIndex, presetIndex, presetProducts[presetIndex]);
+        } else if (selectionModel.getPresetIndex(slotIndex) == presetIndex) {
+            selectionModel.deselect(slotIndex);
         }
     }
 
+    /**
+     * Fills every slot that has no product yet with the first product its row offers.
+     */
+    private void selectAllSlots() {
+        for (int i = 0; i < numSlots; i++) {
+            int presetIndex = presetIndexOf(i, 0);
+            if (presetIndex >= 0 && !selectionModel.isSelected(i)) {
+                selectionModel.select(i, presetIndex, presetProducts[presetIndex]);
+            }
+        }
+        slotListView.refresh();
+    }
+
     /**
      * Creates a new instance of the VendingMachine class and populates it with the selected products.
      * Then, displays the vending machine's graphical user interface to the user.
@@ -164,48 +167,9 @@ public class CreateVendingMachine {
             return;
         }
 
-        for (int i = 0; i < numSlots; i++) {
-            VBox slotBox = slotBoxes.get(i);
-            if (slotBox == null) {
-                return;
-            }
-            slotBoxes.add(slotBox);
-        }
-    
-        for (int i = 0; i < numSlots; i++) {
-            VBox slotBox = slotBoxes.get(i);
-        
-            for (int j = 0; j < numItemsPerSlot; j++) {
-                int checkBoxIndex = j * 5 + 1;
-                if (checkBoxIndex < slotBox.getChildren().size()) {
-                    Node node = slotBox.getChildren().get(checkBoxIndex);
-                    if (node instanceof CheckBox) {
-                        CheckBox selectedCheckBox = (CheckBox) node;
-                        if (selectedCheckBox.isSelected()) {
-                            Product selectedProduct = selectedProducts.get(i * numItemsPerSlot + j);
-                        // Add the selected product's information to the slotBox
-                        slotBox.getChildren().addAll(
-                            new Label("Name: " + selectedProduct.getName()),
-                            new Label("Price: " + selectedProduct.getPrice()),
-                            new Label("Calories: " + selectedProduct.getCalories()),
-                            new Label("Can be sold individually: " + selectedProduct.isSoldIndividually())
-                        );
-                        }
-                    } 
-                } 
-            }
-        }
-    
-        
+        List<Product> selectedProducts = selectionModel.getSelectedProducts();
         vendingMachine = new VendingMachine(selectedProducts);
-
-        for (Product product : this.selectedProducts) {
-            slots.setProduct(product.getSelectionNumber() - 1, product.getStock() - 1, product);
-        }
-
-        for (Product product : this.selectedProducts) {
-            vendingMachine.addProduct(product);
-        }
+        selectionModel.commitTo(slots, vendingMachine);
         
         VBox newRoot = new VBox();
         newRoot.getChildren().addAll(root.getChildren());
@@ -231,6 +195,103 @@ public class CreateVendingMachine {
         return createMachineButton;
     }
 
+    /**
+     * The SlotCell class shows one slot row of the wizard: a header and the preset products that go into the slot.
+     * Its nodes are built once and refilled whenever the cell is reused for another row.
+     */
+    private class SlotCell extends ListCell<Integer> {
+        private final VBox content = new VBox(5);
+        private final Label header = new Label();
+        private final HBox itemBoxes = new HBox(10);
+        private final CheckBox[] checkBoxes = new CheckBox[PRODUCTS_PER_ROW];
+        private final Label[][] labels = new Label[PRODUCTS_PER_ROW][4];
+
+        SlotCell() {
+            for (int column = 0; column < PRODUCTS_PER_ROW; column++) {
+                int itemColumn = column;
+                CheckBox selectedCheckBox = new CheckBox("Select");
+                selectedCheckBox.setOnAction(e -> {
+                    int slotIndex = getItem();
+                    handleProductSelection(slotIndex, presetIndexOf(slotIndex, itemColumn), selectedCheckBox.isSelected());
+                    updateCheckBoxes(slotIndex); // Selecting a product unchecks the one it replaces
+                });
+                checkBoxes[column] = selectedCheckBox;
+                VBox itemBox = new VBox(selectedCheckBox);
+                for (int line = 0; line < 4; line++) {
+                    labels[column][line] = new Label();
+                    itemBox.getChildren().add(labels[column][line]);
+                }
+                itemBox.setPrefWidth(150);
+                itemBoxes.getChildren().add(itemBox);
+            }
+            content.getChildren().addAll(header, itemBoxes);
+        }
+
+        @Override
+        protected void updateItem(Integer slotIndex, boolean empty) {
+            super.updateItem(slotIndex, empty);
+            if (empty || slotIndex == null) {
+                setGraphic(null);
+                return;
+            }
+            header.setText("Select items for slot " + (slotIndex + 1) + ":");
+            for (int column = 0; column < PRODUCTS_PER_ROW; column++) {
+                int presetIndex = presetIndexOf(slotIndex, column);
+                Node itemBox = itemBoxes.getChildren().get(column);
+                boolean shown = presetIndex >= 0;
+                itemBox.setVisible(shown);
+                itemBox.setManaged(shown);
+                if (shown) {
+                    Product preSetProduct = presetProducts[presetIndex];
+                    labels[column][0].setText("Name: " + preSetProduct.getName());
+                    labels[column][1].setText("Price: " + preSetProduct.getPrice());
+                    labels[column][2].setText("Calories: " + preSetProduct.getCalories());
+                    labels[column][3].setText("Can be sold individually: " + preSetProduct.isSoldIndividually());
+                }
+            }
+            updateCheckBoxes(slotIndex);
+            setGraphic(content);
+        }
+
+        /**
+         * Checks the checkbox of the product selected for the slot, if any, and unchecks the others.
+         * Selected checkboxes get a green background.
+         */
+        private void updateCheckBoxes(int slotIndex) {
+            int selectedPreset = selectionModel.getPresetIndex(slotIndex);
+            for (int column = 0; column < PRODUCTS_PER_ROW; column++) {
+                int presetIndex = presetIndexOf(slotIndex, column);
+                boolean selected = presetIndex >= 0 && presetIndex == selectedPreset;
+                checkBoxes[column].setSelected(selected);
+                checkBoxes[column].setStyle(selected ? "-fx-background-color: green;" : "");
+            }
+        }
+    }
+
+    /**
+     * The SlotRange class is the read-only list of slot indices from 0 to a size, computed on demand instead of stored.
+     */
+    private static class SlotRange extends AbstractList<Integer> {
+        private final int size;
+
+        SlotRange(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public Integer get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return index;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
      /**
      * Creates empty item slots in the vending machine.
      */
@@ -295,12 +356,12 @@ public class CreateVendingMachine {
     }
 
      /**
-     * Returns the list of selected products that will be placed in the vending machine's slots.
+     * Returns the list of selected products that will be placed in the vending machine's slots, in slot order.
      *
-     * @return The list of selected products.
+     * @return A new list holding the selected products.
      */
     public List<Product> getSelectedProducts() {
-        return selectedProducts;
+        return selectionModel.getSelectedProducts();
     }
     
 }
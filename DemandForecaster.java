@@ -0,0 +1,202 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The DemandForecaster class estimates how fast each product sells, from the stream of purchases of a
+ * {@link TransactionEngine}, and turns the estimate into par levels and time-to-stockout predictions.
+ *
+ * <p>
+ * The sales rate is an exponentially weighted average over time: every sale counts with a weight that decays
+ * by a factor e every {@code window}, so recent sales matter most and a product that stops selling fades out.
+ * Each selection number keeps one value, the logarithm of its decayed sales sum, stored as the bits of a double
+ * in an atomic array. A sale updates it with a single compare-and-set and no allocation, so the purchase path
+ * never locks. Selection numbers from 0 to the maximum given to the constructor are tracked; others are ignored.
+ * </p>
+ *
+ * <p>
+ * Par levels assume sales arrive as a Poisson process: the par level for a period is the expected demand plus
+ * {@value #SAFETY_FACTOR} standard deviations, which covers the demand of about 95% of the periods.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class DemandForecaster implements TransactionListener {
+    private static final double SAFETY_FACTOR = 1.65;
+    private static final long NO_SALES = Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY);
+    private static final double NANOS_PER_HOUR = TimeUnit.HOURS.toNanos(1);
+
+    private final AtomicLongArray logWeights; // log of the decayed sales sum, scaled so a sale at time t weighs e^(t / window)
+    private final double windowNanos;
+    private final long origin = System.nanoTime();
+
+    /**
+     * Creates a forecaster for selection numbers up to {@link MachineMetrics#MAX_SELECTION_NUMBER}, weighting sales over a day.
+     */
+    public DemandForecaster() {
+        this(MachineMetrics.MAX_SELECTION_NUMBER, 24, TimeUnit.HOURS);
+    }
+
+    /**
+     * Creates a forecaster.
+     *
+     * @param maxSelectionNumber The highest selection number to track.
+     * @param window             The time after which the weight of a sale has decayed by a factor e.
+     * @param unit               The unit of the window.
+     */
+    public DemandForecaster(int maxSelectionNumber, long window, TimeUnit unit) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("The window must be positive.");
+        }
+        logWeights = new AtomicLongArray(maxSelectionNumber + 1);
+        for (int i = 0; i < logWeights.length(); i++) {
+            logWeights.set(i, NO_SALES);
+        }
+        windowNanos = unit.toNanos(window);
+    }
+
+    /**
+     * Records a successful purchase of a single product. Purchases of product sets are not counted: the selection
+     * number of a set's main product may also belong to a single product, whose demand they would inflate.
+     */
+    @Override
+    public void transactionCompleted(VendingMachineRequest request, TransactionResult result) {
+        if (result.isSuccess() && result.getProductSet() == null) {
+            recordSales(result.getSelectionNumber(), 1, System.nanoTime());
+        }
+    }
+
+    /**
+     * Records one sale happening now.
+     *
+     * @param selectionNumber The selection number of the product sold.
+     */
+    public void recordSale(int selectionNumber) {
+        recordSales(selectionNumber, 1, System.nanoTime());
+    }
+
+    /**
+     * Records sales of a product, for example when replaying a journal.
+     *
+     * @param selectionNumber The selection number of the product sold.
+     * @param quantity        The number of items sold.
+     * @param nanoTime        The value of {@link System#nanoTime()} when they were sold.
+     */
+    public void recordSales(int selectionNumber, int quantity, long nanoTime) {
+        if (selectionNumber < 0 || selectionNumber >= logWeights.length() || quantity <= 0) {
+            return;
+        }
+        double added = timeOf(nanoTime) + Math.log(quantity);
+        while (true) {
+            long currentBits = logWeights.get(selectionNumber);
+            double current = Double.longBitsToDouble(currentBits);
+            double next = logAdd(current, added);
+            if (logWeights.compareAndSet(selectionNumber, currentBits, Double.doubleToRawLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the current sales rate of a product.
+     *
+     * @param selectionNumber The selection number of the product.
+     * @return The estimated number of items sold per hour, 0 if the product never sold or is not tracked.
+     */
+    public double getSalesPerHour(int selectionNumber) {
+        return salesPerHour(selectionNumber, timeOf(System.nanoTime()));
+    }
+
+    /**
+     * Tells whether a product ever sold since the forecaster was created.
+     *
+     * @param selectionNumber The selection number of the product.
+     * @return true if at least one sale of the product was recorded.
+     */
+    public boolean hasSales(int selectionNumber) {
+        return selectionNumber >= 0 && selectionNumber < logWeights.length() && logWeights.get(selectionNumber) != NO_SALES;
+    }
+
+    /**
+     * Estimates how long the current stock of a product lasts at its current sales rate.
+     *
+     * @param product The product.
+     * @return The number of hours until the product runs out, 0 if it is out of stock,
+     *         or {@link Double#POSITIVE_INFINITY} if it does not sell.
+     */
+    public double getHoursToStockout(Product product) {
+        return hoursToStockout(product, timeOf(System.nanoTime()));
+    }
+
+    /**
+     * Gets the stock a product needs to last the specified period: the expected sales of the period
+     * plus a safety margin.
+     *
+     * @param selectionNumber The selection number of the product.
+     * @param period          The time until the next restock.
+     * @param unit            The unit of the period.
+     * @return The par level, 0 if the product does not sell.
+     */
+    public int getParLevel(int selectionNumber, long period, TimeUnit unit) {
+        double expected = getSalesPerHour(selectionNumber) * unit.toNanos(period) / NANOS_PER_HOUR;
+        return (int) Math.min(Integer.MAX_VALUE, Math.ceil(expected + SAFETY_FACTOR * Math.sqrt(expected)));
+    }
+
+    /**
+     * Finds the products expected to run out within the specified time. Every product costs a few arithmetic
+     * operations and one atomic read, so a whole machine is checked in microseconds.
+     *
+     * @param products The products to check, for example the products of a machine.
+     * @param within   The time to look ahead.
+     * @param unit     The unit of the time.
+     * @return The products running out within the time, in the order they were given.
+     */
+    public List<Product> getProductsRunningOut(List<Product> products, long within, TimeUnit unit) {
+        double now = timeOf(System.nanoTime());
+        double hours = unit.toNanos(within) / NANOS_PER_HOUR;
+        List<Product> runningOut = new ArrayList<>();
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            if (hoursToStockout(product, now) <= hours) {
+                runningOut.add(product);
+            }
+        }
+        return runningOut;
+    }
+
+    /**
+     * Converts a {@link System#nanoTime()} value into the number of windows since the forecaster was created.
+     */
+    private double timeOf(long nanoTime) {
+        return (nanoTime - origin) / windowNanos;
+    }
+
+    private double salesPerHour(int selectionNumber, double now) {
+        if (selectionNumber < 0 || selectionNumber >= logWeights.length()) {
+            return 0;
+        }
+        double logWeight = Double.longBitsToDouble(logWeights.get(selectionNumber));
+        return Math.exp(logWeight - now) * NANOS_PER_HOUR / windowNanos;
+    }
+
+    private double hoursToStockout(Product product, double now) {
+        int stock = product.getStock();
+        if (stock <= 0) {
+            return 0;
+        }
+        double rate = salesPerHour(product.getSelectionNumber(), now);
+        return rate > 0 ? stock / rate : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Computes log(e^a + e^b) without overflowing.
+     */
+    private static double logAdd(double a, double b) {
+        double max = Math.max(a, b);
+        if (max == Double.NEGATIVE_INFINITY) {
+            return max;
+        }
+        return max + Math.log1p(Math.exp(Math.min(a, b) - max));
+    }
+}
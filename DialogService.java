@@ -0,0 +1,268 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+
+/**
+ * The DialogService class shows the message, change and cash entry dialogs of the vending machine.
+ * Each kind of dialog has a single window that is built the first time it is needed and reused afterwards:
+ * showing a dialog again only updates its labels and brings the window to the front, so a kiosk running for
+ * weeks does not keep creating stages and scenes.
+ *
+ * <p>
+ * Messages shown while their window is already open are added to it instead of opening another window,
+ * so a burst of messages ends up in one dialog. Likewise, change shown while the change window is open is added
+ * to the change already shown, so the customer sees the change of every purchase. Only the last {@value #MAX_LINES} messages are kept.
+ * The service may be called from any thread; messages from other threads are queued and shown together
+ * on the JavaFX application thread.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class DialogService {
+    private static final int MAX_LINES = 20;
+    private static final DialogService instance = new DialogService();
+
+    private final MessageDialog infoDialog = new MessageDialog("Information");
+    private final MessageDialog errorDialog = new MessageDialog("Error");
+    private Stage changeStage;
+    private Label changeTotalLabel;
+    private Label[] changeCountLabels;
+    private final int[] shownChange = new int[Cash.values().length]; // Only used on the JavaFX application thread
+    private int shownPurchases;
+    private Stage enterCashStage;
+    private TextField cashInputField;
+    private Consumer<String> cashHandler;
+
+    private DialogService() {
+    }
+
+    /**
+     * @return the dialog service of the application
+     */
+    public static DialogService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Shows an information message.
+     *
+     * @param message The message to show.
+     */
+    public void showInfo(String message) {
+        infoDialog.post(message);
+    }
+
+    /**
+     * Shows an error message.
+     *
+     * @param message The message to show.
+     */
+    public void showError(String message) {
+        errorDialog.post(message);
+    }
+
+    /**
+     * Shows the change of a purchase, split by denomination. A change shown while the window is open is added to
+     * the change already shown, and the window tells how many purchases the total covers.
+     *
+     * @param change The CashBundle containing the change amounts.
+     */
+    public void showChange(CashBundle change) {
+        runOnFxThread(() -> {
+            if (changeStage == null) {
+                buildChangeStage();
+            }
+            int[] counts = change.toArray();
+            Cash[] denominations = Cash.values();
+            int total = 0;
+            for (int d = 0; d < denominations.length; d++) {
+                shownChange[d] += counts[d];
+                total += shownChange[d] * denominations[d].getValue();
+            }
+            shownPurchases++;
+            changeTotalLabel.setText(shownPurchases == 1
+                    ? "Your change is: " + total + " split as follows:"
+                    : "Your change for " + shownPurchases + " purchases is: " + total + " split as follows:");
+            for (int i = 0; i < changeCountLabels.length; i++) {
+                int denomination = denominations.length - 1 - i; // Largest bills first
+                changeCountLabels[i].setText(denominations[denomination].getValue() + ": " + shownChange[denomination]);
+            }
+            bringToFront(changeStage);
+        });
+    }
+
+    /**
+     * Asks the customer to enter cash. The input field is cleared every time the dialog is shown.
+     *
+     * @param onEnter Receives the text the customer entered when they press the button.
+     */
+    public void showEnterCash(Consumer<String> onEnter) {
+        runOnFxThread(() -> {
+            if (enterCashStage == null) {
+                buildEnterCashStage();
+            }
+            cashHandler = onEnter;
+            cashInputField.clear();
+            bringToFront(enterCashStage);
+            cashInputField.requestFocus();
+        });
+    }
+
+    /**
+     * Builds the change window once.
+     */
+    private void buildChangeStage() {
+        GridPane gridPane = new GridPane();
+        gridPane.setHgap(10);
+        gridPane.setVgap(10);
+        gridPane.setPadding(new Insets(10));
+
+        changeTotalLabel = new Label();
+        gridPane.add(changeTotalLabel, 0, 0, 2, 1);
+        changeCountLabels = new Label[Cash.values().length];
+        for (int i = 0; i < changeCountLabels.length; i++) {
+            changeCountLabels[i] = new Label();
+            gridPane.add(changeCountLabels[i], 0, i + 1, 2, 1);
+        }
+
+        changeStage = new Stage();
+        Button closeButton = new Button("Close");
+        closeButton.setOnAction(e -> changeStage.hide());
+        gridPane.add(closeButton, 0, changeCountLabels.length + 1, 2, 1);
+        changeStage.setTitle("Change");
+        changeStage.setScene(new Scene(gridPane, 400, 400));
+        changeStage.setOnHidden(e -> { // The next change starts a fresh dialog
+            Arrays.fill(shownChange, 0);
+            shownPurchases = 0;
+        });
+    }
+
+    /**
+     * Builds the cash entry window once.
+     */
+    private void buildEnterCashStage() {
+        GridPane gridPane = new GridPane();
+        gridPane.setHgap(10);
+        gridPane.setVgap(10);
+        gridPane.setPadding(new Insets(10));
+
+        Label enterCashLabel = new Label("Please enter cash as follows:");
+        gridPane.add(enterCashLabel, 0, 0, 2, 1);
+
+        Label exampleLabel = new Label("Example: If you would like to enter 2 ten: 0,2,0,0,0");
+        gridPane.add(exampleLabel, 0, 1, 2, 1);
+
+        cashInputField = new TextField();
+        gridPane.add(cashInputField, 0, 2, 2, 1);
+
+        Button enterCashButton = new Button("Enter Cash");
+        enterCashButton.setOnAction(e -> {
+            if (cashHandler != null) {
+                cashHandler.accept(cashInputField.getText());
+            }
+        });
+        gridPane.add(enterCashButton, 0, 3, 2, 1);
+
+        enterCashStage = new Stage();
+        enterCashStage.setTitle("Enter Cash");
+        enterCashStage.setScene(new Scene(gridPane, 400, 400));
+        enterCashStage.setOnHidden(e -> cashHandler = null); // Do not keep the last purchase reachable
+    }
+
+    /**
+     * Shows a window if it is hidden and brings it to the front.
+     */
+    private static void bringToFront(Stage stage) {
+        if (!stage.isShowing()) {
+            stage.show();
+        }
+        stage.toFront();
+    }
+
+    /**
+     * Runs an action on the JavaFX application thread, right away if already on it.
+     */
+    private static void runOnFxThread(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+        } else {
+            Platform.runLater(action);
+        }
+    }
+
+    /**
+     * The MessageDialog class is a reusable window listing the messages posted while it is open.
+     */
+    private static class MessageDialog {
+        private final String title;
+        private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+        private final FxCoalescer flusher = new FxCoalescer(this::flush);
+        private final Deque<String> lines = new ArrayDeque<>(); // Only used on the JavaFX application thread
+        private Stage stage;
+        private Label messageLabel;
+
+        MessageDialog(String title) {
+            this.title = title;
+        }
+
+        /**
+         * Queues a message and schedules the window to be updated, unless an update is already pending.
+         */
+        void post(String message) {
+            pending.add(message);
+            if (Platform.isFxApplicationThread()) {
+                flush();
+            } else {
+                flusher.request();
+            }
+        }
+
+        /**
+         * Adds every queued message to the window and shows it.
+         */
+        private void flush() {
+            if (stage == null) {
+                build();
+            }
+            for (String message = pending.poll(); message != null; message = pending.poll()) {
+                lines.addLast(message);
+                if (lines.size() > MAX_LINES) {
+                    lines.removeFirst();
+                }
+            }
+            messageLabel.setText(String.join("\n\n", lines));
+            stage.sizeToScene();
+            bringToFront(stage);
+        }
+
+        /**
+         * Builds the window once.
+         */
+        private void build() {
+            messageLabel = new Label();
+            messageLabel.setWrapText(true);
+            messageLabel.setMaxWidth(560);
+            stage = new Stage();
+            Button closeButton = new Button("Close");
+            closeButton.setOnAction(e -> stage.hide());
+            VBox vbox = new VBox(10, messageLabel, closeButton);
+            vbox.setPadding(new Insets(10));
+            stage.setTitle(title);
+            stage.setScene(new Scene(vbox));
+            stage.setOnHidden(e -> lines.clear()); // The next message starts a fresh dialog
+        }
+    }
+}
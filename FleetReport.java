@@ -0,0 +1,144 @@
+/**
+ * The FleetReport class sums up the outcome of a fleet simulation run by the {@link FleetSimulator}.
+ * Reports of parts of the fleet are combined with {@link #merge(FleetReport)}.
+ *
+ * @author Ceriola, Antonio
+ */
+public class FleetReport {
+    private long machines;
+    private long transactions;
+    private long sales;
+    private long revenue;
+    private long stockOuts;
+    private long changeFailures;
+    private long otherFailures;
+    private long elapsedNanos;
+
+    /**
+     * Records the outcome of one purchase.
+     *
+     * @param result The outcome of the purchase.
+     */
+    public void record(TransactionResult result) {
+        transactions++;
+        switch (result.getStatus()) {
+            case SUCCESS:
+                sales++;
+                revenue += result.getPrice();
+                break;
+            case OUT_OF_STOCK:
+                stockOuts++;
+                break;
+            case EXACT_CHANGE_ONLY:
+                changeFailures++;
+                break;
+            default:
+                otherFailures++;
+                break;
+        }
+    }
+
+    /**
+     * Records that one more machine was simulated.
+     */
+    public void recordMachine() {
+        machines++;
+    }
+
+    /**
+     * Adds the counts of another report to this one.
+     *
+     * @param other The report to add.
+     * @return This report.
+     */
+    public FleetReport merge(FleetReport other) {
+        machines += other.machines;
+        transactions += other.transactions;
+        sales += other.sales;
+        revenue += other.revenue;
+        stockOuts += other.stockOuts;
+        changeFailures += other.changeFailures;
+        otherFailures += other.otherFailures;
+        return this;
+    }
+
+    /**
+     * Sets the wall-clock time the whole simulation took.
+     *
+     * @param elapsedNanos The elapsed time in nanoseconds.
+     */
+    public void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of simulated machines
+     */
+    public long getMachines() {
+        return machines;
+    }
+
+    /**
+     * @return the number of purchases attempted across the fleet
+     */
+    public long getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * @return the number of successful sales across the fleet
+     */
+    public long getSales() {
+        return sales;
+    }
+
+    /**
+     * @return the total price of all successful sales
+     */
+    public long getRevenue() {
+        return revenue;
+    }
+
+    /**
+     * @return the number of purchases that failed because the product was out of stock
+     */
+    public long getStockOuts() {
+        return stockOuts;
+    }
+
+    /**
+     * @return the number of purchases that failed because the machine could not pay the change
+     */
+    public long getChangeFailures() {
+        return changeFailures;
+    }
+
+    /**
+     * @return the number of purchases that failed for any other reason
+     */
+    public long getOtherFailures() {
+        return otherFailures;
+    }
+
+    /**
+     * @return the wall-clock time of the simulation in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the number of purchases processed per second of wall-clock time
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : transactions * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Machines: %d%nTransactions: %d%nSales: %d (revenue %d)%nStock-outs: %d%nChange failures: %d%n"
+                + "Other failures: %d%nWall-clock time: %.1f ms%nThroughput: %.0f transactions/s",
+                machines, transactions, sales, revenue, stockOuts, changeFailures, otherFailures,
+                elapsedNanos / 1_000_000.0, getThroughput());
+    }
+}
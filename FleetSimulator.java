@@ -0,0 +1,235 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The FleetSimulator class simulates a fleet of identical vending machines under synthetic demand.
+ * Every machine is built from the same template: the slot layout, the selected products, the product sets
+ * and the starting cash. Machines are simulated in parallel on a fork/join pool, one machine per task, and every
+ * machine only lives while its task runs, so memory stays flat however large the fleet is.
+ *
+ * <p>
+ * A simulated machine is made of real {@link Slots}, products, product sets and a {@link CashVault}, and its purchases
+ * are sold by a real {@link TransactionEngine}, so the simulation follows exactly the rules of the real machines.
+ * Purchases are sold without the engine's bookkeeping: they are not recorded in the {@link MachineMetrics}
+ * transaction counters, in JFR or by transaction listeners. Each task counts its own outcomes in a
+ * {@link FleetReport} and the reports are merged when the tasks join.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class FleetSimulator {
+    private static final Cash[] DENOMINATIONS = Cash.values();
+
+    private final int numSlots;
+    private final int numItemsPerSlot;
+    private final List<Product> selectedProducts;
+    private final List<ProductSet> productSets;
+    private final CashBundle startingCash;
+
+    /**
+     * Creates a simulator for machines built from the specified template.
+     *
+     * @param numSlots         The number of slots of every machine.
+     * @param numItemsPerSlot  The number of items per slot of every machine.
+     * @param selectedProducts The products placed in the slots, one per slot in order.
+     * @param startingCash     The cash every machine starts with.
+     */
+    public FleetSimulator(int numSlots, int numItemsPerSlot, List<Product> selectedProducts, CashBundle startingCash) {
+        this(numSlots, numItemsPerSlot, selectedProducts, new ArrayList<>(), startingCash);
+    }
+
+    /**
+     * Creates a simulator for machines built from the specified template, also selling product sets.
+     *
+     * @param numSlots         The number of slots of every machine.
+     * @param numItemsPerSlot  The number of items per slot of every machine.
+     * @param selectedProducts The products placed in the slots, one per slot in order.
+     * @param productSets      The product sets every machine sells; their stock is copied now, so later changes to
+     *                         the templates do not affect the simulation.
+     * @param startingCash     The cash every machine starts with.
+     */
+    public FleetSimulator(int numSlots, int numItemsPerSlot, List<Product> selectedProducts, List<ProductSet> productSets,
+            CashBundle startingCash) {
+        this.numSlots = numSlots;
+        this.numItemsPerSlot = numItemsPerSlot;
+        this.selectedProducts = new ArrayList<>(selectedProducts);
+        this.productSets = copyOf(productSets);
+        this.startingCash = startingCash;
+    }
+
+    /**
+     * Runs a headless fleet simulation of the preset machine and prints its report.
+     * Usage: java FleetSimulator [machines] [purchasesPerMachine] [seed]
+     *
+     * @param args The optional number of machines, purchases per machine and demand seed.
+     */
+    public static void main(String[] args) {
+        int machines = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int purchasesPerMachine = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+        System.out.println(withPresetProducts().run(machines, purchasesPerMachine, seed));
+    }
+
+    /**
+     * Creates a simulator for machines holding every preset product that is sold individually,
+     * with one slot per product, 10 items per slot, the preset product sets and 25 bills of every denomination.
+     *
+     * @return A simulator for the default machine.
+     */
+    public static FleetSimulator withPresetProducts() {
+        List<Product> products = new ArrayList<>();
+        for (Product product : Product.getCustomProducts()) {
+            if (product.isSoldIndividually()) {
+                products.add(product);
+            }
+        }
+        return new FleetSimulator(products.size(), 10, products, Product.getCatalog().getProductSets(),
+                new CashBundle(25, 25, 25, 25, 25));
+    }
+
+    /**
+     * Simulates the fleet on the common fork/join pool.
+     *
+     * @param machines            The number of machines in the fleet.
+     * @param purchasesPerMachine The number of purchase attempts per machine.
+     * @param seed                The seed of the synthetic demand; equal seeds give equal results.
+     * @return The fleet-wide report.
+     */
+    public FleetReport run(int machines, int purchasesPerMachine, long seed) {
+        return run(ForkJoinPool.commonPool(), machines, purchasesPerMachine, seed);
+    }
+
+    /**
+     * Simulates the fleet on the specified fork/join pool.
+     *
+     * @param pool                The pool running the simulation.
+     * @param machines            The number of machines in the fleet.
+     * @param purchasesPerMachine The number of purchase attempts per machine.
+     * @param seed                The seed of the synthetic demand; equal seeds give equal results.
+     * @return The fleet-wide report.
+     */
+    public FleetReport run(ForkJoinPool pool, int machines, int purchasesPerMachine, long seed) {
+        long start = System.nanoTime();
+        FleetReport report = pool.invoke(new FleetTask(0, machines, purchasesPerMachine, seed));
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Builds one machine from the template and runs its synthetic demand: every purchase picks a slot
+     * or a product set at random.
+     *
+     * @param machine             The index of the machine in the fleet.
+     * @param purchasesPerMachine The number of purchase attempts.
+     * @param seed                The seed of the fleet's synthetic demand.
+     * @return The report of this machine.
+     */
+    private FleetReport simulateMachine(int machine, int purchasesPerMachine, long seed) {
+        Slots slots = new Slots(numSlots, numItemsPerSlot);
+        int[] selectionNumbers = new int[Math.min(numSlots, selectedProducts.size())];
+        for (int i = 0; i < selectionNumbers.length; i++) {
+            Product template = selectedProducts.get(i);
+            Product product = new Product(template.getSelectionNumber(), numItemsPerSlot, template.getPrice(),
+                    template.getCalories(), template.isSoldIndividually(), template.getName());
+            slots.fillSlot(i, product, numItemsPerSlot);
+            selectionNumbers[i] = product.getSelectionNumber();
+        }
+        List<ProductSet> sets = copyOf(productSets);
+        TransactionEngine engine = new TransactionEngine(slots, new CashVault(startingCash));
+        SplittableRandom random = new SplittableRandom(seed ^ (machine * 0x9E3779B97F4A7C15L));
+        FleetReport report = new FleetReport();
+        report.recordMachine();
+        int choices = selectionNumbers.length + sets.size();
+        int[] cash = new int[DENOMINATIONS.length];
+        for (int i = 0; i < purchasesPerMachine && choices > 0; i++) {
+            int choice = random.nextInt(choices);
+            VendingMachineRequest request;
+            if (choice < selectionNumbers.length) {
+                int selectionNumber = selectionNumbers[choice];
+                payFor(slots.getProductBySelectionNumber(selectionNumber).getPrice(), random, cash);
+                request = new VendingMachineRequest(selectionNumber, cash);
+            } else {
+                ProductSet productSet = sets.get(choice - selectionNumbers.length);
+                payFor(productSet.getTotalPrice(), random, cash);
+                request = new VendingMachineRequest(productSet, cash);
+            }
+            report.record(engine.sell(request));
+        }
+        return report;
+    }
+
+    /**
+     * Copies product sets with their own products, so a machine sells from its own stock.
+     * A product included in several sets stays shared between the copies.
+     */
+    private static List<ProductSet> copyOf(List<ProductSet> templates) {
+        Map<Product, Product> copies = new IdentityHashMap<>();
+        List<ProductSet> sets = new ArrayList<>(templates.size());
+        for (ProductSet template : templates) {
+            Product main = template.getMainProduct();
+            ProductSet set = new ProductSet(main.getSelectionNumber(), main.getStock(), main.getPrice(), main.getCalories(),
+                    main.isSoldIndividually(), main.getName());
+            for (Map.Entry<Product, Integer> entry : template.getIncludedProducts().entrySet()) {
+                Product included = copies.computeIfAbsent(entry.getKey(), product -> new Product(product.getSelectionNumber(),
+                        product.getStock(), product.getPrice(), product.getCalories(), product.isSoldIndividually(), product.getName()));
+                set.addIncludedProduct(included, entry.getValue());
+            }
+            sets.add(set);
+        }
+        return sets;
+    }
+
+    /**
+     * Picks random bills until they cover the price, like a customer emptying their wallet.
+     * Also used by the {@link FloatOptimizer} to generate purchases.
+     *
+     * @param price  The price to cover.
+     * @param random The source of randomness.
+     * @param cash   The array receiving the number of bills per denomination.
+     */
+    static void payFor(int price, SplittableRandom random, int[] cash) {
+        Arrays.fill(cash, 0);
+        int total = 0;
+        while (total < price) {
+            int denomination = random.nextInt(DENOMINATIONS.length);
+            cash[denomination]++;
+            total += DENOMINATIONS[denomination].getValue();
+        }
+    }
+
+    /**
+     * The FleetTask class splits a range of machines in halves until a single machine is left.
+     */
+    @SuppressWarnings("serial")
+    private class FleetTask extends RecursiveTask<FleetReport> {
+        private final int from;
+        private final int to;
+        private final int purchasesPerMachine;
+        private final long seed;
+
+        FleetTask(int from, int to, int purchasesPerMachine, long seed) {
+            this.from = from;
+            this.to = to;
+            this.purchasesPerMachine = purchasesPerMachine;
+            this.seed = seed;
+        }
+
+        @Override
+        protected FleetReport compute() {
+            if (to - from <= 1) {
+                return from < to ? simulateMachine(from, purchasesPerMachine, seed) : new FleetReport();
+            }
+            int middle = (from + to) >>> 1;
+            FleetTask left = new FleetTask(from, middle, purchasesPerMachine, seed);
+            left.fork();
+            FleetReport right = new FleetTask(middle, to, purchasesPerMachine, seed).compute();
+            return left.join().merge(right);
+        }
+    }
+}
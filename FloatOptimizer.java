@@ -0,0 +1,329 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The FloatOptimizer class recommends how many bills of each denomination a vending machine should be replenished to.
+ * It replays a stream of purchases, taken from a {@link TransactionJournal} or generated, against every candidate
+ * float of a given total value and picks the float that fails to give change the fewest times.
+ *
+ * <p>
+ * A candidate fixes the number of tens, twenties, fifties and hundreds, and fives make up the rest of the total.
+ * When the total allows more than {@value #MAX_CANDIDATES} candidates, the counts are searched in coarser steps.
+ * Candidates are replayed in parallel on a fork/join pool. Every worker thread has its own {@link ChangeEngine}
+ * and replays into plain arrays with {@link CashVault#settle(int[], int[], int, ChangeEngine, int[])}, the rules the vault itself uses,
+ * so the replay does not allocate. A candidate stops being replayed as soon as it fails more often than the best
+ * candidate of its task. Among floats with as few failures, the one spreading its value most evenly over the
+ * denominations wins, so that no denomination is the only one left to give change with.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class FloatOptimizer {
+    public static final int MAX_CANDIDATES = 20_000;
+    private static final Cash[] DENOMINATIONS = Cash.values();
+    private static final int LEAF_SIZE = 64;
+    private static final ThreadLocal<ChangeEngine> changeEngines = ThreadLocal.withInitial(ChangeEngine::new);
+
+    private final int[] changeAmounts;
+    private final int[] entered; // Bills entered per purchase, DENOMINATIONS.length entries per purchase
+    private final int purchases;
+
+    /**
+     * Creates an optimizer replaying the specified purchases.
+     *
+     * @param changeAmounts The change owed for every purchase.
+     * @param entered       The bills entered for every purchase, {@code Cash.values().length} entries per purchase
+     *                      indexed by {@link Cash#ordinal()}.
+     */
+    public FloatOptimizer(int[] changeAmounts, int[] entered) {
+        if (entered.length != changeAmounts.length * DENOMINATIONS.length) {
+            throw new IllegalArgumentException("Expected " + DENOMINATIONS.length + " bill counts per purchase.");
+        }
+        this.changeAmounts = changeAmounts.clone();
+        this.entered = entered.clone();
+        this.purchases = changeAmounts.length;
+    }
+
+    /**
+     * Recommends a float worth as much as 25 bills of every denomination, the level {@link MaintenanceManager#replenishCash()}
+     * tops up to, for the purchases of a journal or for synthetic purchases of the preset products.
+     * Usage: java FloatOptimizer [journal|-] [totalFloat] [purchases] [seed]
+     *
+     * @param args The optional journal file or - for synthetic purchases, the total value of the float,
+     *             and the number and seed of the synthetic purchases.
+     * @throws IOException if the journal cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        int totalFloat = args.length > 1 ? Integer.parseInt(args[1]) : 25 * (5 + 10 + 20 + 50 + 100);
+        FloatOptimizer optimizer;
+        if (args.length > 0 && !"-".equals(args[0])) {
+            optimizer = fromJournal(Paths.get(args[0]));
+        } else {
+            int purchases = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : 42L;
+            List<Product> products = new ArrayList<>();
+            for (Product product : Product.getCustomProducts()) {
+                if (product.isSoldIndividually()) {
+                    products.add(product);
+                }
+            }
+            optimizer = synthetic(products, purchases, seed);
+        }
+        System.out.println(optimizer.optimize(totalFloat));
+    }
+
+    /**
+     * Creates an optimizer replaying the purchases of a journal that reached the change-making step:
+     * the sales and the purchases that failed for lack of change.
+     *
+     * @param journal The journal file.
+     * @return An optimizer for the purchases of the journal.
+     * @throws IOException if the journal cannot be read.
+     */
+    public static FloatOptimizer fromJournal(Path journal) throws IOException {
+        PurchaseBuffer buffer = new PurchaseBuffer();
+        TransactionJournal.replay(journal, (type, status, selectionNumber, amount, timestamp, enteredBills, paidOut) -> {
+            boolean failed = type == JournalRecordType.TRANSACTION_FAILED || type == JournalRecordType.SET_TRANSACTION_FAILED;
+            if (type == JournalRecordType.SALE || type == JournalRecordType.SET_SALE
+                    || (failed && status == TransactionStatus.EXACT_CHANGE_ONLY.ordinal())) {
+                buffer.add(enteredBills, amount);
+            }
+        });
+        return buffer.toOptimizer();
+    }
+
+    /**
+     * Creates an optimizer replaying synthetic purchases: customers pick a random product and pay with random
+     * bills until they cover the price, like the customers of the {@link FleetSimulator}.
+     *
+     * @param products  The products customers choose from.
+     * @param purchases The number of purchases.
+     * @param seed      The seed of the synthetic demand; equal seeds give equal purchases.
+     * @return An optimizer for the synthetic purchases.
+     */
+    public static FloatOptimizer synthetic(List<Product> products, int purchases, long seed) {
+        PurchaseBuffer buffer = new PurchaseBuffer();
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] cash = new int[DENOMINATIONS.length];
+        for (int i = 0; i < purchases && !products.isEmpty(); i++) {
+            int price = products.get(random.nextInt(products.size())).getPrice();
+            FleetSimulator.payFor(price, random, cash);
+            buffer.add(cash, price);
+        }
+        return buffer.toOptimizer();
+    }
+
+    /**
+     * Finds the float of the specified total value with the fewest change failures, on the common fork/join pool.
+     *
+     * @param totalFloat The total value of the float, a multiple of the smallest bill.
+     * @return The recommendation.
+     */
+    public FloatRecommendation optimize(int totalFloat) {
+        return optimize(ForkJoinPool.commonPool(), totalFloat);
+    }
+
+    /**
+     * Finds the float of the specified total value with the fewest change failures.
+     *
+     * @param pool       The pool replaying the candidates.
+     * @param totalFloat The total value of the float, a multiple of the smallest bill.
+     * @return The recommendation.
+     */
+    public FloatRecommendation optimize(ForkJoinPool pool, int totalFloat) {
+        if (totalFloat < 0 || totalFloat % Cash.FIVE.getValue() != 0) {
+            throw new IllegalArgumentException("The float must be a non-negative multiple of " + Cash.FIVE.getValue() + ".");
+        }
+        long start = System.nanoTime();
+        int step = 1;
+        while (countCandidates(totalFloat, step) > MAX_CANDIDATES) {
+            step++;
+        }
+        int[] candidates = listCandidates(totalFloat, step);
+        int count = candidates.length / DENOMINATIONS.length;
+        Best best = pool.invoke(new SearchTask(candidates, 0, count));
+        int[] targets = Arrays.copyOfRange(candidates, best.candidate * DENOMINATIONS.length, (best.candidate + 1) * DENOMINATIONS.length);
+        return new FloatRecommendation(targets, best.failures, purchases, count, System.nanoTime() - start);
+    }
+
+    /**
+     * Replays every purchase against a float with {@link CashVault#settle(int[], int[], int, ChangeEngine, int[])}
+     * and counts the change failures.
+     *
+     * @param candidates The candidate floats.
+     * @param candidate  The index of the float to replay.
+     * @param limit      The number of failures after which the replay gives up.
+     * @param engine     The change engine of the calling thread.
+     * @param vault      Scratch array for the bills in the machine.
+     * @param deposit    Scratch array for the bills entered for a purchase.
+     * @param change     Scratch array for the change of a purchase.
+     * @return The number of failures, or a number above the limit if the replay gave up.
+     */
+    private long replay(int[] candidates, int candidate, long limit, ChangeEngine engine, int[] vault, int[] deposit, int[] change) {
+        System.arraycopy(candidates, candidate * DENOMINATIONS.length, vault, 0, DENOMINATIONS.length);
+        long failures = 0;
+        for (int p = 0, offset = 0; p < purchases; p++, offset += DENOMINATIONS.length) {
+            System.arraycopy(entered, offset, deposit, 0, DENOMINATIONS.length);
+            if (!CashVault.settle(vault, deposit, changeAmounts[p], engine, change) && ++failures > limit) {
+                return failures;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Counts the candidates of a total for a step, without listing them.
+     */
+    private static long countCandidates(int totalFloat, int step) {
+        long count = 0;
+        for (int hundreds = 0; hundreds * 100 <= totalFloat; hundreds += step) {
+            for (int fifties = 0; hundreds * 100 + fifties * 50 <= totalFloat; fifties += step) {
+                for (int twenties = 0; hundreds * 100 + fifties * 50 + twenties * 20 <= totalFloat; twenties += step) {
+                    int rest = totalFloat - hundreds * 100 - fifties * 50 - twenties * 20;
+                    count += rest / (10 * step) + 1;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Lists the candidates of a total: every count of tens, twenties, fifties and hundreds that is a multiple of
+     * the step and fits the total, with fives making up the rest.
+     *
+     * @return The candidates, {@code Cash.values().length} entries per candidate indexed by {@link Cash#ordinal()}.
+     */
+    private static int[] listCandidates(int totalFloat, int step) {
+        int[] candidates = new int[(int) countCandidates(totalFloat, step) * DENOMINATIONS.length];
+        int offset = 0;
+        for (int hundreds = 0; hundreds * 100 <= totalFloat; hundreds += step) {
+            for (int fifties = 0; hundreds * 100 + fifties * 50 <= totalFloat; fifties += step) {
+                for (int twenties = 0; hundreds * 100 + fifties * 50 + twenties * 20 <= totalFloat; twenties += step) {
+                    for (int tens = 0; hundreds * 100 + fifties * 50 + twenties * 20 + tens * 10 <= totalFloat; tens += step) {
+                        int rest = totalFloat - hundreds * 100 - fifties * 50 - twenties * 20 - tens * 10;
+                        candidates[offset + Cash.FIVE.ordinal()] = rest / 5;
+                        candidates[offset + Cash.TEN.ordinal()] = tens;
+                        candidates[offset + Cash.TWENTY.ordinal()] = twenties;
+                        candidates[offset + Cash.FIFTY.ordinal()] = fifties;
+                        candidates[offset + Cash.HUNDRED.ordinal()] = hundreds;
+                        offset += DENOMINATIONS.length;
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * The Best class is the best candidate of a range of candidates.
+     */
+    private static class Best {
+        final int candidate;
+        final long failures;
+        final int largestShare; // Value held in the denomination holding the most
+
+        Best(int candidate, long failures, int largestShare) {
+            this.candidate = candidate;
+            this.failures = failures;
+            this.largestShare = largestShare;
+        }
+
+        boolean isBetterThan(Best other) {
+            return other == null || failures < other.failures || (failures == other.failures
+                    && (largestShare < other.largestShare || (largestShare == other.largestShare && candidate < other.candidate)));
+        }
+    }
+
+    /**
+     * The SearchTask class splits a range of candidates in halves until at most {@value FloatOptimizer#LEAF_SIZE}
+     * are left, and replays those on the current worker thread.
+     */
+    @SuppressWarnings("serial")
+    private class SearchTask extends RecursiveTask<Best> {
+        private final int[] candidates;
+        private final int from;
+        private final int to;
+
+        SearchTask(int[] candidates, int from, int to) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Best compute() {
+            if (to - from <= LEAF_SIZE) {
+                return searchLeaf();
+            }
+            int middle = (from + to) >>> 1;
+            SearchTask left = new SearchTask(candidates, from, middle);
+            left.fork();
+            Best right = new SearchTask(candidates, middle, to).compute();
+            Best leftBest = left.join();
+            return leftBest != null && leftBest.isBetterThan(right) ? leftBest : right;
+        }
+
+        private Best searchLeaf() {
+            ChangeEngine engine = changeEngines.get();
+            int[] vault = new int[DENOMINATIONS.length];
+            int[] deposit = new int[DENOMINATIONS.length];
+            int[] change = new int[DENOMINATIONS.length];
+            Best best = null;
+            for (int candidate = from; candidate < to; candidate++) {
+                long limit = best == null ? Long.MAX_VALUE : best.failures; // Ties still matter for the spread
+                long failures = replay(candidates, candidate, limit, engine, vault, deposit, change);
+                if (failures <= limit) {
+                    int largestShare = 0;
+                    for (int d = 0; d < DENOMINATIONS.length; d++) {
+                        largestShare = Math.max(largestShare, candidates[candidate * DENOMINATIONS.length + d] * DENOMINATIONS[d].getValue());
+                    }
+                    Best current = new Best(candidate, failures, largestShare);
+                    if (current.isBetterThan(best)) {
+                        best = current;
+                    }
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * The PurchaseBuffer class collects purchases into growing arrays while a stream is read.
+     */
+    private static class PurchaseBuffer {
+        private int[] changeAmounts = new int[1024];
+        private int[] entered = new int[1024 * DENOMINATIONS.length];
+        private int size;
+
+        /**
+         * Adds a purchase if the bills cover the price.
+         */
+        void add(int[] bills, int price) {
+            int total = 0;
+            for (int d = 0; d < DENOMINATIONS.length; d++) {
+                total += bills[d] * DENOMINATIONS[d].getValue();
+            }
+            if (total < price) {
+                return;
+            }
+            if (size == changeAmounts.length) {
+                changeAmounts = Arrays.copyOf(changeAmounts, size * 2);
+                entered = Arrays.copyOf(entered, size * 2 * DENOMINATIONS.length);
+            }
+            changeAmounts[size] = total - price;
+            System.arraycopy(bills, 0, entered, size * DENOMINATIONS.length, DENOMINATIONS.length);
+            size++;
+        }
+
+        FloatOptimizer toOptimizer() {
+            return new FloatOptimizer(Arrays.copyOf(changeAmounts, size), Arrays.copyOf(entered, size * DENOMINATIONS.length));
+        }
+    }
+}
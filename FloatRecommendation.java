@@ -0,0 +1,82 @@
+/**
+ * The FloatRecommendation class holds the outcome of a {@link FloatOptimizer} run: the best float found,
+ * how it performed on the replayed purchases and how long the search took.
+ *
+ * @author Ceriola, Antonio
+ */
+public class FloatRecommendation {
+    private final int[] targets;
+    private final long changeFailures;
+    private final long purchases;
+    private final long candidates;
+    private final long elapsedNanos;
+
+    /**
+     * Creates a recommendation.
+     *
+     * @param targets        The recommended number of bills per denomination, indexed by {@link Cash#ordinal()}.
+     * @param changeFailures The number of replayed purchases the float could not give change for.
+     * @param purchases      The number of replayed purchases.
+     * @param candidates     The number of floats evaluated.
+     * @param elapsedNanos   The time the search took.
+     */
+    public FloatRecommendation(int[] targets, long changeFailures, long purchases, long candidates, long elapsedNanos) {
+        this.targets = targets.clone();
+        this.changeFailures = changeFailures;
+        this.purchases = purchases;
+        this.candidates = candidates;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the recommended number of bills per denomination, indexed by {@link Cash#ordinal()}
+     */
+    public int[] getTargets() {
+        return targets.clone();
+    }
+
+    /**
+     * @return the recommended float as a CashBundle
+     */
+    public CashBundle getTargetBundle() {
+        return new CashBundle(targets);
+    }
+
+    /**
+     * @return the number of replayed purchases the recommended float could not give change for
+     */
+    public long getChangeFailures() {
+        return changeFailures;
+    }
+
+    /**
+     * @return the number of replayed purchases
+     */
+    public long getPurchases() {
+        return purchases;
+    }
+
+    /**
+     * @return the number of floats evaluated
+     */
+    public long getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * @return the time the search took in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        CashBundle bundle = getTargetBundle();
+        return String.format("Recommended float: 100: %d, 50: %d, 20: %d, 10: %d, 5: %d (total %d)%n"
+                + "Change failures: %d of %d purchases%n"
+                + "Candidates: %d in %.1f ms",
+                bundle.getNumber100(), bundle.getNumber50(), bundle.getNumber20(), bundle.getNumber10(), bundle.getNumber5(),
+                bundle.getTotal(), changeFailures, purchases, candidates, elapsedNanos / 1e6);
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.application.Platform;
+
+/**
+ * The FxCoalescer class runs a user interface update on the JavaFX application thread at most once per pulse,
+ * however many times it is requested. Background threads record what changed in their own structures and call
+ * {@link #request()}; only the first request since the last update posts a {@link Platform#runLater(Runnable)},
+ * and the update then applies everything recorded so far in one go.
+ *
+ * <p>
+ * The pending flag is cleared before the update runs, so changes made while it runs schedule another update
+ * instead of being lost.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class FxCoalescer {
+    private final Runnable update;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Creates a coalescer for the specified update.
+     *
+     * @param update The update to run on the JavaFX application thread.
+     */
+    public FxCoalescer(Runnable update) {
+        this.update = update;
+    }
+
+    /**
+     * Requests the update. May be called from any thread and returns immediately.
+     */
+    public void request() {
+        if (scheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::run);
+        }
+    }
+
+    /**
+     * Runs the update on the JavaFX application thread.
+     */
+    private void run() {
+        scheduled.set(false);
+        update.run();
+    }
+}
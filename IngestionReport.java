@@ -0,0 +1,128 @@
+/**
+ * The IngestionReport class sums up a replay of recorded purchase requests run by the {@link BatchIngestor}.
+ *
+ * @author Ceriola, Antonio
+ */
+public class IngestionReport {
+    private long records;
+    private long sales;
+    private long revenue;
+    private long failures;
+    private long malformed;
+    private long batches;
+    private long bytes;
+    private long elapsedNanos;
+
+    /**
+     * Records the outcome of one purchase request.
+     *
+     * @param result The outcome of the purchase.
+     */
+    public void record(TransactionResult result) {
+        records++;
+        if (result.isSuccess()) {
+            sales++;
+            revenue += result.getPrice();
+        } else {
+            failures++;
+        }
+    }
+
+    /**
+     * Records a line of the input that is not a valid purchase request.
+     */
+    public void recordMalformed() {
+        records++;
+        malformed++;
+    }
+
+    /**
+     * Records that a batch of the specified size was read from the input.
+     *
+     * @param batchBytes The number of input bytes in the batch.
+     */
+    public void recordBatch(long batchBytes) {
+        batches++;
+        bytes += batchBytes;
+    }
+
+    /**
+     * Sets the wall-clock time the whole replay took.
+     *
+     * @param elapsedNanos The elapsed time in nanoseconds.
+     */
+    public void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of input records, malformed ones included
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return the number of successful sales
+     */
+    public long getSales() {
+        return sales;
+    }
+
+    /**
+     * @return the total price of all successful sales
+     */
+    public long getRevenue() {
+        return revenue;
+    }
+
+    /**
+     * @return the number of valid requests whose purchase failed
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the number of input lines that are not valid requests
+     */
+    public long getMalformed() {
+        return malformed;
+    }
+
+    /**
+     * @return the number of batches the input was processed in
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return the number of input bytes read
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the wall-clock time of the replay in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the number of records processed per second of wall-clock time
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : records * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Records: %d (%d malformed)%nSales: %d (revenue %d)%nFailed purchases: %d%nBatches: %d%n"
+                + "Input: %.1f MB%nWall-clock time: %.1f ms%nThroughput: %.0f records/s (%.1f MB/s)",
+                records, malformed, sales, revenue, failures, batches, bytes / 1e6, elapsedNanos / 1_000_000.0,
+                getThroughput(), elapsedNanos == 0 ? 0 : bytes * 1000.0 / elapsedNanos);
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * The JournalRecordType enum lists the kinds of records written to the {@link TransactionJournal}.
+ * The ordinal is stored in the journal, so new types must only ever be added at the end.
+ *
+ * @author Ceriola, Antonio
+ */
+public enum JournalRecordType {
+    SALE, TRANSACTION_FAILED, RESTOCK, PRICE_CHANGE, CASH_REPLENISH, CASH_COLLECT,
+    SET_SALE, SET_TRANSACTION_FAILED; // Purchases of product sets, keyed by the selection number of the set's main product
+
+    private static final JournalRecordType[] TYPES = values();
+
+    /**
+     * 
+     * @param ordinal the ordinal stored in the journal
+     * @return the record type with that ordinal, or null if there is none
+     */
+    public static JournalRecordType fromOrdinal(int ordinal){
+        return ordinal >= 0 && ordinal < TYPES.length ? TYPES[ordinal] : null;
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LatencyHistogram class records how long an operation takes, in nanoseconds, with fixed memory and
+ * without locks or allocation. Values are counted in log-linear buckets: every power of two is split into
+ * {@value #SUB_BUCKETS} equal buckets, so percentiles are accurate to about 3% from 1 ns up to about two
+ * hours, and larger values are counted in the last bucket.
+ *
+ * @author Ceriola, Antonio
+ *
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 42;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Creates an empty histogram.
+     *
+     * @param name The name of the measured operation.
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records the time elapsed since the specified start.
+     *
+     * @param startNanos A value of {@link System#nanoTime()} taken when the operation started.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records one measurement.
+     *
+     * @param nanos The duration of the operation in nanoseconds; negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketOf(value));
+        totalNanos.addAndGet(value);
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Gets the value below which the specified fraction of the measurements fall.
+     *
+     * @param fraction The fraction, between 0 and 1.
+     * @return The lowest value of the bucket holding that measurement, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double fraction) {
+        long total = getCount();
+        long rank = (long) Math.ceil(Math.min(Math.max(fraction, 0), 1) * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank && seen > 0) {
+                return Math.min(lowestValueOf(i), getMaxNanos());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Clears every measurement. Measurements recorded while resetting may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * Gets the bucket counting the specified value.
+     *
+     * @param value A non-negative value.
+     * @return The index of the bucket.
+     */
+    private static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Gets the lowest value counted in the specified bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return The lowest value of the bucket.
+     */
+    private static long lowestValueOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        long total = 0; // Summed on read so recording touches one counter less
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    @Override
+    public double getMeanNanos() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) totalNanos.get() / count;
+    }
+
+    @Override
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    @Override
+    public long getP50Nanos() {
+        return getPercentile(0.50);
+    }
+
+    @Override
+    public long getP90Nanos() {
+        return getPercentile(0.90);
+    }
+
+    @Override
+    public long getP99Nanos() {
+        return getPercentile(0.99);
+    }
+
+    @Override
+    public long getP999Nanos() {
+        return getPercentile(0.999);
+    }
+}
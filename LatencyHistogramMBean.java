@@ -0,0 +1,53 @@
+/**
+ * The LatencyHistogramMBean interface is the management interface of a {@link LatencyHistogram},
+ * exposing its summary statistics as JMX attributes.
+ *
+ * @author Ceriola, Antonio
+ */
+public interface LatencyHistogramMBean {
+
+    /**
+     * @return the name of the measured operation
+     */
+    String getName();
+
+    /**
+     * @return the number of measurements
+     */
+    long getCount();
+
+    /**
+     * @return the mean duration in nanoseconds
+     */
+    double getMeanNanos();
+
+    /**
+     * @return the longest duration in nanoseconds
+     */
+    long getMaxNanos();
+
+    /**
+     * @return the median duration in nanoseconds
+     */
+    long getP50Nanos();
+
+    /**
+     * @return the 90th percentile of the duration in nanoseconds
+     */
+    long getP90Nanos();
+
+    /**
+     * @return the 99th percentile of the duration in nanoseconds
+     */
+    long getP99Nanos();
+
+    /**
+     * @return the 99.9th percentile of the duration in nanoseconds
+     */
+    long getP999Nanos();
+
+    /**
+     * Clears every measurement.
+     */
+    void reset();
+}
@@ -0,0 +1,361 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The MachineMetrics class collects the latency of the purchase hot path and counts sales, change failures
+ * and stock-outs per selection number, with separate counters for product sets, whose main products may share
+ * a selection number with a single product. Recording is lock-free and does not allocate: latencies go into
+ * {@link LatencyHistogram}s and counters into fixed atomic arrays. Selection numbers from 0 to
+ * {@value #MAX_SELECTION_NUMBER} are counted individually and all others together.
+ *
+ * <p>
+ * The metrics are published as JMX MBeans under the {@code VendingMachine} domain and can be written as JSON
+ * lines to a file, once or periodically. Setting the system property {@code vendingmachine.metrics} to
+ * {@code false} turns recording off.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class MachineMetrics implements MachineMetricsMBean {
+    public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("vendingmachine.metrics"));
+    public static final int MAX_SELECTION_NUMBER = 4095;
+    private static final int OTHER = MAX_SELECTION_NUMBER + 1;
+    private static final MachineMetrics instance = new MachineMetrics();
+
+    static {
+        if (ENABLED) {
+            instance.register(ManagementFactory.getPlatformMBeanServer());
+        }
+    }
+
+    private final LatencyHistogram transaction = new LatencyHistogram("transaction");
+    private final LatencyHistogram changeCalculation = new LatencyHistogram("calculateChange");
+    private final LatencyHistogram stockDecrement = new LatencyHistogram("stockDecrement");
+    private final LatencyHistogram productLookup = new LatencyHistogram("productLookup");
+    private final AtomicLongArray sales = new AtomicLongArray(OTHER + 1);
+    private final AtomicLongArray changeFailures = new AtomicLongArray(OTHER + 1);
+    private final AtomicLongArray stockOuts = new AtomicLongArray(OTHER + 1);
+    private final AtomicLongArray setSales = new AtomicLongArray(OTHER + 1);
+    private final AtomicLongArray setChangeFailures = new AtomicLongArray(OTHER + 1);
+    private final AtomicLongArray setStockOuts = new AtomicLongArray(OTHER + 1);
+    private ScheduledExecutorService snapshotExecutor;
+
+    private MachineMetrics() {
+    }
+
+    /**
+     * @return the metrics of this process
+     */
+    public static MachineMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts timing an operation.
+     *
+     * @return The value to pass to one of the record methods, or 0 if recording is off.
+     */
+    public static long startTimer() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records a purchase processed by the {@link TransactionEngine}.
+     *
+     * @param start           The value returned by {@link #startTimer()} when the purchase started.
+     * @param selectionNumber The selection number that was requested.
+     * @param status          The outcome of the purchase.
+     */
+    public static void recordTransaction(long start, int selectionNumber, TransactionStatus status) {
+        if (ENABLED) {
+            instance.transaction.recordSince(start);
+            if (status == TransactionStatus.SUCCESS) {
+                instance.sales.incrementAndGet(indexOf(selectionNumber));
+            } else if (status == TransactionStatus.EXACT_CHANGE_ONLY) {
+                instance.changeFailures.incrementAndGet(indexOf(selectionNumber));
+            }
+        }
+    }
+
+    /**
+     * Records a purchase of a product set processed by the {@link TransactionEngine}, counted apart from the
+     * purchases of single products.
+     *
+     * @param start           The value returned by {@link #startTimer()} when the purchase started.
+     * @param selectionNumber The selection number of the set's main product.
+     * @param status          The outcome of the purchase.
+     */
+    public static void recordSetTransaction(long start, int selectionNumber, TransactionStatus status) {
+        if (ENABLED) {
+            instance.transaction.recordSince(start);
+            if (status == TransactionStatus.SUCCESS) {
+                instance.setSales.incrementAndGet(indexOf(selectionNumber));
+            } else if (status == TransactionStatus.EXACT_CHANGE_ONLY) {
+                instance.setChangeFailures.incrementAndGet(indexOf(selectionNumber));
+            } else if (status == TransactionStatus.OUT_OF_STOCK) {
+                instance.setStockOuts.incrementAndGet(indexOf(selectionNumber));
+            }
+        }
+    }
+
+    /**
+     * Records the latency of a change calculation of the {@link VendingMachineController}.
+     * A calculation commits no stock and no cash, so it is not counted as a sale or a change failure;
+     * those are counted by {@link #recordTransaction(long, int, TransactionStatus)} only.
+     *
+     * @param start The value returned by {@link #startTimer()} when the calculation started.
+     */
+    public static void recordChangeCalculation(long start) {
+        if (ENABLED) {
+            instance.changeCalculation.recordSince(start);
+        }
+    }
+
+    /**
+     * Records an attempt to take a product out of stock.
+     *
+     * @param start           The value returned by {@link #startTimer()} when the attempt started.
+     * @param selectionNumber The selection number of the product.
+     * @param taken           true if the stock was reduced, false if the product was out of stock.
+     */
+    public static void recordStockDecrement(long start, int selectionNumber, boolean taken) {
+        if (ENABLED) {
+            instance.stockDecrement.recordSince(start);
+            if (!taken) {
+                instance.stockOuts.incrementAndGet(indexOf(selectionNumber));
+            }
+        }
+    }
+
+    /**
+     * Records a catalog lookup by selection number.
+     *
+     * @param start The value returned by {@link #startTimer()} when the lookup started.
+     */
+    public static void recordProductLookup(long start) {
+        if (ENABLED) {
+            instance.productLookup.recordSince(start);
+        }
+    }
+
+    /**
+     * Gets the counter slot of a selection number.
+     */
+    private static int indexOf(int selectionNumber) {
+        return selectionNumber >= 0 && selectionNumber <= MAX_SELECTION_NUMBER ? selectionNumber : OTHER;
+    }
+
+    /**
+     * @return the latency of whole purchases processed by the {@link TransactionEngine}
+     */
+    public LatencyHistogram getTransactionLatency() {
+        return transaction;
+    }
+
+    /**
+     * @return the latency of {@link VendingMachineController#calculateChange(VendingMachineRequest)}
+     */
+    public LatencyHistogram getChangeCalculationLatency() {
+        return changeCalculation;
+    }
+
+    /**
+     * @return the latency of {@link Product#tryDecrement(int)}
+     */
+    public LatencyHistogram getStockDecrementLatency() {
+        return stockDecrement;
+    }
+
+    /**
+     * @return the latency of {@link Product#valueOf(int)}
+     */
+    public LatencyHistogram getProductLookupLatency() {
+        return productLookup;
+    }
+
+    @Override
+    public long getSales() {
+        return sum(sales) + sum(setSales);
+    }
+
+    @Override
+    public long getChangeFailures() {
+        return sum(changeFailures) + sum(setChangeFailures);
+    }
+
+    @Override
+    public long getStockOuts() {
+        return sum(stockOuts) + sum(setStockOuts);
+    }
+
+    @Override
+    public long getSales(int selectionNumber) {
+        return sales.get(indexOf(selectionNumber));
+    }
+
+    @Override
+    public long getChangeFailures(int selectionNumber) {
+        return changeFailures.get(indexOf(selectionNumber));
+    }
+
+    @Override
+    public long getStockOuts(int selectionNumber) {
+        return stockOuts.get(indexOf(selectionNumber));
+    }
+
+    @Override
+    public long getSetSales(int selectionNumber) {
+        return setSales.get(indexOf(selectionNumber));
+    }
+
+    @Override
+    public long getSetChangeFailures(int selectionNumber) {
+        return setChangeFailures.get(indexOf(selectionNumber));
+    }
+
+    @Override
+    public long getSetStockOuts(int selectionNumber) {
+        return setStockOuts.get(indexOf(selectionNumber));
+    }
+
+    @Override
+    public String getSnapshot() {
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\"timestamp\":").append(System.currentTimeMillis()).append(",\"latency\":{");
+        LatencyHistogram[] histograms = {transaction, changeCalculation, stockDecrement, productLookup};
+        for (int i = 0; i < histograms.length; i++) {
+            LatencyHistogram histogram = histograms[i];
+            json.append(i == 0 ? "" : ",").append('"').append(histogram.getName()).append("\":{")
+                    .append("\"count\":").append(histogram.getCount())
+                    .append(",\"meanNanos\":").append(Math.round(histogram.getMeanNanos()))
+                    .append(",\"p50Nanos\":").append(histogram.getP50Nanos())
+                    .append(",\"p90Nanos\":").append(histogram.getP90Nanos())
+                    .append(",\"p99Nanos\":").append(histogram.getP99Nanos())
+                    .append(",\"p999Nanos\":").append(histogram.getP999Nanos())
+                    .append(",\"maxNanos\":").append(histogram.getMaxNanos()).append('}');
+        }
+        json.append("},\"sales\":").append(getSales())
+                .append(",\"changeFailures\":").append(getChangeFailures())
+                .append(",\"stockOuts\":").append(getStockOuts())
+                .append(",\"products\":");
+        appendCounters(json, sales, changeFailures, stockOuts);
+        json.append(",\"sets\":");
+        appendCounters(json, setSales, setChangeFailures, setStockOuts);
+        return json.append('}').toString();
+    }
+
+    /**
+     * Appends the non-zero counters of every selection number as a JSON object.
+     */
+    private static void appendCounters(StringBuilder json, AtomicLongArray sales, AtomicLongArray changeFailures, AtomicLongArray stockOuts) {
+        json.append('{');
+        boolean first = true;
+        for (int i = 0; i <= OTHER; i++) {
+            long productSales = sales.get(i);
+            long productChangeFailures = changeFailures.get(i);
+            long productStockOuts = stockOuts.get(i);
+            if (productSales != 0 || productChangeFailures != 0 || productStockOuts != 0) {
+                json.append(first ? "" : ",").append('"').append(i == OTHER ? "other" : String.valueOf(i)).append("\":{")
+                        .append("\"sales\":").append(productSales)
+                        .append(",\"changeFailures\":").append(productChangeFailures)
+                        .append(",\"stockOuts\":").append(productStockOuts).append('}');
+                first = false;
+            }
+        }
+        json.append('}');
+    }
+
+    @Override
+    public void reset() {
+        transaction.reset();
+        changeCalculation.reset();
+        stockDecrement.reset();
+        productLookup.reset();
+        for (int i = 0; i <= OTHER; i++) {
+            sales.set(i, 0);
+            changeFailures.set(i, 0);
+            stockOuts.set(i, 0);
+            setSales.set(i, 0);
+            setChangeFailures.set(i, 0);
+            setStockOuts.set(i, 0);
+        }
+    }
+
+    /**
+     * Appends the current metrics to a file as one line of JSON.
+     *
+     * @param file The file to append to; it is created if it does not exist.
+     * @throws IOException if the file cannot be written.
+     */
+    public void writeSnapshot(Path file) throws IOException {
+        Files.write(file, (getSnapshot() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Appends the metrics to a file at a fixed rate on a background thread.
+     * Snapshots that fail to be written are skipped.
+     *
+     * @param file   The file to append to.
+     * @param period The time between two snapshots.
+     * @param unit   The unit of the period.
+     * @return A future that stops the snapshots when cancelled.
+     */
+    public synchronized ScheduledFuture<?> startSnapshots(Path file, long period, TimeUnit unit) {
+        if (snapshotExecutor == null) {
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "machine-metrics-snapshots");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return snapshotExecutor.scheduleAtFixedRate(() -> {
+            try {
+                writeSnapshot(file);
+            } catch (IOException e) {
+                System.err.println("Could not write the metrics snapshot: " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Registers the metrics and every latency histogram with an MBean server.
+     * Registration errors are reported and otherwise ignored, since metrics must never stop the machine.
+     *
+     * @param server The MBean server.
+     */
+    private void register(MBeanServer server) {
+        try {
+            server.registerMBean(this, new ObjectName("VendingMachine:type=Metrics"));
+            for (LatencyHistogram histogram : new LatencyHistogram[] {transaction, changeCalculation, stockDecrement, productLookup}) {
+                server.registerMBean(histogram, new ObjectName("VendingMachine:type=Latency,name=" + histogram.getName()));
+            }
+        } catch (JMException e) {
+            System.err.println("Could not publish the machine metrics over JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds up every counter of an array.
+     */
+    private static long sum(AtomicLongArray counters) {
+        long total = 0;
+        for (int i = 0; i < counters.length(); i++) {
+            total += counters.get(i);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * The MachineMetricsMBean interface is the management interface of the {@link MachineMetrics},
+ * exposing the sale, change failure and stock-out counters over JMX.
+ *
+ * @author Ceriola, Antonio
+ */
+public interface MachineMetricsMBean {
+
+    /**
+     * @return the number of successful sales, of single products and product sets
+     */
+    long getSales();
+
+    /**
+     * @return the number of purchases that failed because the machine could not pay the change
+     */
+    long getChangeFailures();
+
+    /**
+     * @return the number of attempts to take a product that was out of stock
+     */
+    long getStockOuts();
+
+    /**
+     * @param selectionNumber The selection number of a product.
+     * @return the number of successful sales of the product
+     */
+    long getSales(int selectionNumber);
+
+    /**
+     * @param selectionNumber The selection number of a product.
+     * @return the number of purchases of the product that failed because of change
+     */
+    long getChangeFailures(int selectionNumber);
+
+    /**
+     * @param selectionNumber The selection number of a product.
+     * @return the number of attempts to take the product while it was out of stock
+     */
+    long getStockOuts(int selectionNumber);
+
+    /**
+     * @param selectionNumber The selection number of the main product of a product set.
+     * @return the number of successful sales of the set
+     */
+    long getSetSales(int selectionNumber);
+
+    /**
+     * @param selectionNumber The selection number of the main product of a product set.
+     * @return the number of purchases of the set that failed because of change
+     */
+    long getSetChangeFailures(int selectionNumber);
+
+    /**
+     * @param selectionNumber The selection number of the main product of a product set.
+     * @return the number of purchases of the set that failed because the set or one of its products was out of stock
+     */
+    long getSetStockOuts(int selectionNumber);
+
+    /**
+     * @return every metric as one line of JSON
+     */
+    String getSnapshot();
+
+    /**
+     * Clears every counter and latency histogram.
+     */
+    void reset();
+}
@@ -0,0 +1,430 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The MachineSnapshot class saves the full state of a vending machine to a compact binary file and restores it,
+ * so the machine does not have to be configured again on every launch. A snapshot holds the product catalog,
+ * the composition of every product set, the slots with their products and fill counts, the products selected
+ * for the machine and the bills held by its maintenance manager.
+ *
+ * <p>
+ * File layout: a header of {@value #HEADER_SIZE} bytes (magic, version, reserved, body length), the body and a
+ * CRC-32 of the body. The body starts with a table of every distinct product, each written once as selection
+ * number, stock, price, calories (4 bytes each), flags (1) and a UTF-8 name prefixed by its length (2).
+ * The other sections refer to products by their position in that table, -1 standing for {@link Product#EMPTY}
+ * and -2 for {@link Product#CUSTOM}: the catalog, the product sets (main product written in place, then the
+ * included products and their quantities), the slots (product and item count per slot), the selected products
+ * and one bill count per denomination.
+ * </p>
+ *
+ * <p>
+ * A snapshot is written to a temporary file that replaces the old one in a single move, so a crash while saving
+ * leaves the previous snapshot intact. Restoring memory-maps the file and decodes it straight from the mapping,
+ * without copying it into the heap first.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class MachineSnapshot {
+    public static final int HEADER_SIZE = 16;
+    private static final int MAGIC = 0x564D5353; // "VMSS"
+    private static final int VERSION = 1;
+    private static final int EMPTY_ID = -1;
+    private static final int CUSTOM_ID = -2;
+    private static final int SOLD_INDIVIDUALLY = 1;
+    private static final int PART_OF_SET = 2;
+    private static final int DENOMINATIONS = Cash.values().length;
+
+    private final List<Product> catalog;
+    private final List<ProductSet> productSets;
+    private final Slots slots;
+    private final List<Product> selectedProducts;
+    private final CashBundle cashBundle;
+
+    /**
+     * Creates a restored snapshot.
+     *
+     * @param catalog          The products of the catalog.
+     * @param productSets      The product sets of the catalog.
+     * @param slots            The slots of the vending machine.
+     * @param selectedProducts The products selected for the vending machine.
+     * @param cashBundle       The bills held by the vending machine.
+     */
+    private MachineSnapshot(List<Product> catalog, List<ProductSet> productSets, Slots slots,
+                            List<Product> selectedProducts, CashBundle cashBundle) {
+        this.catalog = catalog;
+        this.productSets = productSets;
+        this.slots = slots;
+        this.selectedProducts = selectedProducts;
+        this.cashBundle = cashBundle;
+    }
+
+    /**
+     * Saves the state of the vending machine run by a maintenance manager, together with the product catalog.
+     *
+     * @param file    The snapshot file; it is replaced if it exists.
+     * @param manager The maintenance manager of the vending machine.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public static void save(Path file, MaintenanceManager manager) throws IOException {
+        save(file, manager.getSlots(), manager.getProducts(), manager.getCashBundle());
+    }
+
+    /**
+     * Saves the state of a vending machine, together with the product catalog.
+     *
+     * @param file             The snapshot file; it is replaced if it exists.
+     * @param slots            The slots of the vending machine.
+     * @param selectedProducts The products selected for the vending machine.
+     * @param cashBundle       The bills held by the vending machine.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public static void save(Path file, Slots slots, List<Product> selectedProducts, CashBundle cashBundle) throws IOException {
+        Map<Product, Integer> ids = new IdentityHashMap<>();
+        List<Product> table = new ArrayList<>();
+        Catalog catalog = Product.getCatalog(); // One version for the whole snapshot: membership, prices and set contents; stock is read as it is
+        for (Product product : catalog.getProducts()) {
+            register(product, ids, table);
+        }
+        for (ProductSet productSet : catalog.getProductSets()) {
+            for (Product included : catalog.getIncludedProducts(productSet).keySet()) {
+                register(included, ids, table);
+            }
+        }
+        for (int i = 0; i < slots.getNumSlots(); i++) {
+            register(slots.getSlotProduct(i), ids, table);
+        }
+        for (Product product : selectedProducts) {
+            register(product, ids, table);
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 checksum = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(0);
+            out.writeInt(0); // Body length, filled in once the body is written
+
+            ChecksumOutput body = new ChecksumOutput(out, checksum);
+            body.writeInt(table.size());
+            for (Product product : table) {
+                writeProduct(body, catalog, product);
+            }
+            writeIds(body, catalog.getProducts(), ids);
+            body.writeInt(catalog.getProductSets().size());
+            for (ProductSet productSet : catalog.getProductSets()) {
+                writeProduct(body, catalog, productSet.getMainProduct());
+                body.writeInt(catalog.getIncludedProducts(productSet).size());
+                for (Map.Entry<Product, Integer> entry : catalog.getIncludedProducts(productSet).entrySet()) {
+                    body.writeInt(idOf(entry.getKey(), ids));
+                    body.writeInt(entry.getValue());
+                }
+            }
+            body.writeInt(slots.getNumSlots());
+            body.writeInt(slots.getNumItemsPerSlot());
+            for (int i = 0; i < slots.getNumSlots(); i++) {
+                body.writeInt(idOf(slots.getSlotProduct(i), ids));
+                body.writeInt(slots.getItemCount(i));
+            }
+            writeIds(body, selectedProducts, ids);
+            int[] counts = cashBundle.toArray();
+            for (int d = 0; d < DENOMINATIONS; d++) {
+                body.writeInt(counts[d]);
+            }
+            out.writeInt((int) checksum.getValue());
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            length.putInt(0, (int) (channel.size() - HEADER_SIZE - 4));
+            channel.write(length, 12);
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restores a snapshot. The catalog is not installed until {@link #installCatalog()} is called.
+     *
+     * @param file The snapshot file.
+     * @return The restored snapshot.
+     * @throws IOException if the file cannot be read, is not a snapshot or is corrupted.
+     */
+    public static MachineSnapshot restore(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (in.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC) {
+                throw new IOException("Not a machine snapshot.");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported machine snapshot version " + header.getInt(4) + ".");
+            }
+            int bodyLength = header.getInt(12);
+            if (bodyLength < 0 || HEADER_SIZE + (long) bodyLength + 4 != in.size()) {
+                throw new IOException("The machine snapshot is truncated.");
+            }
+            ByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, bodyLength + 4L);
+            CRC32 checksum = new CRC32();
+            checksum.update(data.duplicate().limit(bodyLength));
+            if ((int) checksum.getValue() != data.getInt(bodyLength)) {
+                throw new IOException("The machine snapshot is corrupted.");
+            }
+            try {
+                return decode(data);
+            } catch (RuntimeException e) {
+                throw new IOException("The machine snapshot is corrupted.", e);
+            }
+        }
+    }
+
+    /**
+     * Decodes the body of a snapshot whose checksum was verified.
+     *
+     * @param data The body, positioned at its start.
+     * @return The restored snapshot.
+     */
+    private static MachineSnapshot decode(ByteBuffer data) {
+        byte[] name = new byte[256];
+        Product[] table = new Product[data.getInt()];
+        for (int i = 0; i < table.length; i++) {
+            int selectionNumber = data.getInt();
+            int stock = data.getInt();
+            int price = data.getInt();
+            int calories = data.getInt();
+            int flags = data.get();
+            int length = data.getShort() & 0xFFFF;
+            if (length > name.length) {
+                name = new byte[length];
+            }
+            data.get(name, 0, length);
+            Product product = new Product(selectionNumber, stock, price, calories, (flags & SOLD_INDIVIDUALLY) != 0,
+                    new String(name, 0, length, StandardCharsets.UTF_8));
+            product.setPartOfSet((flags & PART_OF_SET) != 0);
+            table[i] = product;
+        }
+        List<Product> catalog = readIds(data, table);
+
+        List<ProductSet> productSets = new ArrayList<>();
+        int setCount = data.getInt();
+        for (int i = 0; i < setCount; i++) {
+            int selectionNumber = data.getInt();
+            int stock = data.getInt();
+            int price = data.getInt();
+            int calories = data.getInt();
+            int flags = data.get();
+            int length = data.getShort() & 0xFFFF;
+            if (length > name.length) {
+                name = new byte[length];
+            }
+            data.get(name, 0, length);
+            ProductSet productSet = new ProductSet(selectionNumber, stock, price, calories, (flags & SOLD_INDIVIDUALLY) != 0,
+                    new String(name, 0, length, StandardCharsets.UTF_8));
+            productSet.getMainProduct().setPartOfSet((flags & PART_OF_SET) != 0);
+            int includedCount = data.getInt();
+            for (int j = 0; j < includedCount; j++) {
+                Product included = productOf(data.getInt(), table);
+                productSet.addIncludedProduct(included, data.getInt());
+            }
+            productSets.add(productSet);
+        }
+
+        Slots slots = new Slots(data.getInt(), data.getInt());
+        for (int i = 0; i < slots.getNumSlots(); i++) {
+            Product product = productOf(data.getInt(), table);
+            int itemCount = data.getInt();
+            if (!product.isEmpty()) {
+                slots.fillSlot(i, product, itemCount);
+            }
+        }
+        List<Product> selectedProducts = readIds(data, table);
+        int[] counts = new int[DENOMINATIONS];
+        for (int d = 0; d < DENOMINATIONS; d++) {
+            counts[d] = data.getInt();
+        }
+        return new MachineSnapshot(catalog, productSets, slots, selectedProducts, new CashBundle(counts));
+    }
+
+    /**
+     * Replaces the product catalog with the restored one.
+     */
+    public void installCatalog() {
+        Product.restoreCatalog(catalog, productSets);
+    }
+
+    /**
+     * Creates a maintenance manager for the restored vending machine, holding its slots, products and bills.
+     *
+     * @return A new maintenance manager.
+     */
+    public MaintenanceManager createMaintenanceManager() {
+        // The vault holds exactly the saved bills, not the saved bills on top of a starting float
+        MaintenanceManager manager = new MaintenanceManager(slots.getNumSlots(), slots.getNumItemsPerSlot(), new CashVault(cashBundle));
+        manager.setSlots(slots);
+        for (Product product : selectedProducts) {
+            manager.addProduct(product);
+        }
+        return manager;
+    }
+
+    /**
+     * @return the restored products of the catalog
+     */
+    public List<Product> getCatalog() {
+        return Collections.unmodifiableList(catalog);
+    }
+
+    /**
+     * @return the restored product sets of the catalog
+     */
+    public List<ProductSet> getProductSets() {
+        return Collections.unmodifiableList(productSets);
+    }
+
+    /**
+     * @return the restored slots of the vending machine
+     */
+    public Slots getSlots() {
+        return slots;
+    }
+
+    /**
+     * @return the restored products selected for the vending machine; the list may be modified
+     */
+    public List<Product> getSelectedProducts() {
+        return selectedProducts;
+    }
+
+    /**
+     * @return the restored bills of the vending machine
+     */
+    public CashBundle getCashBundle() {
+        return cashBundle;
+    }
+
+    /**
+     * Adds a product to the product table if it is not in it yet.
+     */
+    private static void register(Product product, Map<Product, Integer> ids, List<Product> table) {
+        if (product != null && product != Product.EMPTY && product != Product.CUSTOM && !ids.containsKey(product)) {
+            ids.put(product, table.size());
+            table.add(product);
+        }
+    }
+
+    /**
+     * Gets the position of a product in the product table.
+     */
+    private static int idOf(Product product, Map<Product, Integer> ids) {
+        if (product == null || product == Product.EMPTY) {
+            return EMPTY_ID;
+        }
+        return product == Product.CUSTOM ? CUSTOM_ID : ids.get(product);
+    }
+
+    /**
+     * Gets the product at a position of the product table.
+     */
+    private static Product productOf(int id, Product[] table) {
+        if (id == EMPTY_ID) {
+            return Product.EMPTY;
+        }
+        return id == CUSTOM_ID ? Product.CUSTOM : table[id];
+    }
+
+    /**
+     * Writes the fields of a product.
+     */
+    private static void writeProduct(ChecksumOutput out, Catalog catalog, Product product) throws IOException {
+        byte[] name = product.getName().getBytes(StandardCharsets.UTF_8);
+        if (name.length > 0xFFFF) {
+            throw new IOException("The name of product " + product.getSelectionNumber() + " is too long.");
+        }
+        out.writeInt(product.getSelectionNumber());
+        out.writeInt(product.getStock());
+        out.writeInt(catalog.getPrice(product));
+        out.writeInt(product.getCalories());
+        out.writeByte((product.isSoldIndividually() ? SOLD_INDIVIDUALLY : 0) | (product.isPartOfSet() ? PART_OF_SET : 0));
+        out.writeShort(name.length);
+        out.write(name);
+    }
+
+    /**
+     * Writes a list of products as its size followed by their positions in the product table.
+     */
+    private static void writeIds(ChecksumOutput out, List<Product> products, Map<Product, Integer> ids) throws IOException {
+        out.writeInt(products.size());
+        for (Product product : products) {
+            out.writeInt(idOf(product, ids));
+        }
+    }
+
+    /**
+     * Reads a list of products written by {@link #writeIds}.
+     */
+    private static List<Product> readIds(ByteBuffer data, Product[] table) {
+        int size = data.getInt();
+        List<Product> products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            products.add(productOf(data.getInt(), table));
+        }
+        return products;
+    }
+
+    /**
+     * The ChecksumOutput class writes big-endian values, like {@link DataOutputStream}, and adds every
+     * byte it writes to a checksum.
+     */
+    private static class ChecksumOutput {
+        private final DataOutputStream out;
+        private final CRC32 checksum;
+        private final byte[] scratch = new byte[4];
+
+        ChecksumOutput(DataOutputStream out, CRC32 checksum) {
+            this.out = out;
+            this.checksum = checksum;
+        }
+
+        void writeInt(int value) throws IOException {
+            scratch[0] = (byte) (value >>> 24);
+            scratch[1] = (byte) (value >>> 16);
+            scratch[2] = (byte) (value >>> 8);
+            scratch[3] = (byte) value;
+            write(scratch, 4);
+        }
+
+        void writeShort(int value) throws IOException {
+            scratch[0] = (byte) (value >>> 8);
+            scratch[1] = (byte) value;
+            write(scratch, 2);
+        }
+
+        void writeByte(int value) throws IOException {
+            scratch[0] = (byte) value;
+            write(scratch, 1);
+        }
+
+        void write(byte[] bytes) throws IOException {
+            write(bytes, bytes.length);
+        }
+
+        private void write(byte[] bytes, int length) throws IOException {
+            out.write(bytes, 0, length);
+            checksum.update(bytes, 0, length);
+        }
+    }
+}
@@ -1,5 +1,10 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javafx.application.Application;
 import javafx.geometry.Insets;
@@ -13,10 +18,13 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
 public class Main extends Application {
+    private static final Path SNAPSHOT_FILE = Paths.get("vending-machine.snapshot");
 
     private CreateVendingMachine createVendingMachine = null;
     private MaintenanceManager maintenanceManager = null;
     private MaintenanceManagerInterface maintenanceManagerInterface = null;
+    private TransactionJournal journal = null;
+    private final DemandForecaster demandForecaster = new DemandForecaster();
     private VBox root;
     private List<Product> selectedProducts = new ArrayList<>();
 
@@ -31,6 +39,16 @@ public class Main extends Application {
 
     @Override
     public void start(Stage primaryStage) {
+        try {
+            journal = new TransactionJournal(Paths.get("vending-machine.journal"));
+        } catch (IOException e) {
+            showAlert("The transaction journal could not be opened, transactions will not be recorded: " + e.getMessage());
+        }
+        restoreSnapshot();
+        String metricsFile = System.getProperty("vendingmachine.metrics.file");
+        if (metricsFile != null && MachineMetrics.ENABLED) {
+            MachineMetrics.getInstance().startSnapshots(Paths.get(metricsFile), 1, TimeUnit.MINUTES);
+        }
         root = new VBox();
 
         createMachineButton = new Button("Create a Vending Machine");
@@ -73,6 +91,7 @@ public class Main extends Application {
                 createVendingMachineStage.close(); // Close the popup window after creating the vending machine
     
                 createVendingMachine = new CreateVendingMachine(numSlots, numItemsPerSlot);
+                maintenanceManager = null; // A new machine starts with its own maintenance manager and cash vault
                 VBox itemSelectionGUI = createVendingMachine.createItemSlotsGUI(primaryStage, root, numSlots, numItemsPerSlot);
 
                 if (itemSelectionGUI != null) {
@@ -100,9 +119,14 @@ public class Main extends Application {
     /*Test Vending Machine GUI */
 
     private void testVendingMachine() {
-        List<Product> selectedProducts = createVendingMachine.getSelectedProducts();
         if (createVendingMachine != null) {
-            VendingMachineInterface machineInterface = new VendingMachineInterface(createVendingMachine.getSlots(), selectedProducts);
+            List<Product> selectedProducts = createVendingMachine.getSelectedProducts();
+            VendingMachineInterface machineInterface = new VendingMachineInterface(createVendingMachine.getSlots(), selectedProducts,
+                    getMaintenanceManager().getCashVault());
+            if (journal != null) {
+                machineInterface.getTransactionEngine().addTransactionListener(journal);
+            }
+            machineInterface.getTransactionEngine().addTransactionListener(demandForecaster);
             machineInterface.displayProducts();
 
         } else {
@@ -114,9 +138,7 @@ public class Main extends Application {
     /*Manage Vending Machine GUI */
     private void manageVendingMachine() {
         if (createVendingMachine != null) {
-            maintenanceManager = new MaintenanceManager(createVendingMachine.getNumSlots(),
-                    createVendingMachine.getNumItemsPerSlot());
-            maintenanceManagerInterface = new MaintenanceManagerInterface(maintenanceManager);
+            maintenanceManagerInterface = new MaintenanceManagerInterface(getMaintenanceManager());
     
             // Show the Maintenance Manager interface
             Stage maintenanceManagerStage = new Stage();
@@ -126,6 +148,62 @@ public class Main extends Application {
         }
     }
 
+    /**
+     * Returns the maintenance manager of the current vending machine, creating it on first use.
+     * The customer and maintenance screens share it so that both work on the same stock and cash vault.
+     *
+     * @return The maintenance manager of the current vending machine.
+     */
+    private MaintenanceManager getMaintenanceManager() {
+        if (maintenanceManager == null) {
+            maintenanceManager = new MaintenanceManager(createVendingMachine.getNumSlots(),
+                    createVendingMachine.getNumItemsPerSlot());
+            maintenanceManager.setSlots(createVendingMachine.getSlots());
+            maintenanceManager.setJournal(journal);
+            maintenanceManager.setDemandForecaster(demandForecaster, 1, TimeUnit.DAYS);
+            for (Product product : createVendingMachine.getSelectedProducts()) {
+                maintenanceManager.addProduct(product);
+            }
+        }
+        return maintenanceManager;
+    }
+
+    /**
+     * Restores the vending machine saved when the application last exited, if there is one.
+     */
+    private void restoreSnapshot() {
+        if (!Files.exists(SNAPSHOT_FILE)) {
+            return;
+        }
+        try {
+            MachineSnapshot snapshot = MachineSnapshot.restore(SNAPSHOT_FILE);
+            snapshot.installCatalog();
+            createVendingMachine = new CreateVendingMachine(snapshot.getSlots());
+            selectedProducts = createVendingMachine.getSelectedProducts();
+            maintenanceManager = snapshot.createMaintenanceManager();
+            maintenanceManager.setJournal(journal);
+            maintenanceManager.setDemandForecaster(demandForecaster, 1, TimeUnit.DAYS);
+        } catch (IOException e) {
+            showAlert("The saved vending machine could not be restored: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the vending machine and writes the last journal records to disk when the application exits.
+     */
+    @Override
+    public void stop() throws IOException {
+        try {
+            if (createVendingMachine != null) {
+                MachineSnapshot.save(SNAPSHOT_FILE, getMaintenanceManager());
+            }
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+        }
+    }
+
     private void showAlert(String message) {
         Alert alert = new Alert(AlertType.WARNING);
         alert.setTitle("Warning");
@@ -0,0 +1,189 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.animation.AnimationTimer;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.VBox;
+
+/**
+ * The MaintenanceDashboard class shows the live stock of every slot and the bills in the cash vault of a vending machine.
+ *
+ * <p>
+ * The dashboard does not poll. It listens to stock changes of the products in the slots and to changes of the
+ * {@link CashVault}, and only records what changed: the rows of the affected slots and a flag for the vault.
+ * An {@link AnimationTimer} applies the recorded changes at most once every {@value #FRAME_NANOS} nanoseconds,
+ * so thousands of sales per second cost a few list updates per frame and the window stays responsive.
+ * Only the visible rows of the slot list are formatted.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class MaintenanceDashboard implements ProductListener, CashVaultListener {
+    private static final long FRAME_NANOS = 50_000_000L; // At most 20 redraws per second
+    private static final Cash[] DENOMINATIONS = Cash.values();
+
+    private final CashVault cashVault;
+    private final ObservableList<Product> rows;
+    private final Map<Product, int[]> rowsOfProduct = new IdentityHashMap<>(); // Never changed once built
+    private final BitSet dirtyRows = new BitSet();
+    private final AtomicBoolean stockDirty = new AtomicBoolean();
+    private final AtomicBoolean cashDirty = new AtomicBoolean(true);
+    private final int[] cashCounts = new int[DENOMINATIONS.length];
+    private final Label cashTotalLabel = new Label();
+    private final Label[] cashCountLabels = new Label[DENOMINATIONS.length];
+    private final VBox view;
+    private final AnimationTimer timer;
+    private long lastFrame;
+
+    /**
+     * Creates a dashboard for the slots and the cash vault of a vending machine.
+     * The dashboard does not receive changes until {@link #start()} is called.
+     *
+     * @param slots     The slots of the vending machine.
+     * @param cashVault The vault holding the bills of the vending machine.
+     */
+    public MaintenanceDashboard(Slots slots, CashVault cashVault) {
+        this.cashVault = cashVault;
+        Product[] slotProducts = new Product[slots.getNumSlots()];
+        for (int slot = 0; slot < slotProducts.length; slot++) {
+            slotProducts[slot] = slots.getSlotProduct(slot);
+            if (!slotProducts[slot].isEmpty()) {
+                addRow(slotProducts[slot], slot);
+            }
+        }
+        rows = FXCollections.observableArrayList(slotProducts);
+
+        ListView<Product> slotListView = new ListView<>(rows);
+        slotListView.setCellFactory(list -> new SlotCell());
+        view = new VBox(10, new Label("Stock per slot:"), slotListView, new Label("Cash in the machine:"), cashTotalLabel);
+        for (int i = DENOMINATIONS.length - 1; i >= 0; i--) { // Largest bills first
+            cashCountLabels[i] = new Label();
+            view.getChildren().add(cashCountLabels[i]);
+        }
+
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (now - lastFrame >= FRAME_NANOS) {
+                    lastFrame = now;
+                    redraw();
+                }
+            }
+        };
+    }
+
+    private void addRow(Product product, int row) {
+        int[] existing = rowsOfProduct.get(product);
+        int[] grown = existing == null ? new int[1] : Arrays.copyOf(existing, existing.length + 1);
+        grown[grown.length - 1] = row;
+        rowsOfProduct.put(product, grown);
+    }
+
+    /**
+     * @return the node showing the dashboard
+     */
+    public VBox getView() {
+        return view;
+    }
+
+    /**
+     * Starts listening to stock and cash changes and redrawing the dashboard. Must be called on the JavaFX application thread.
+     */
+    public void start() {
+        Product.addProductListener(this);
+        cashVault.addCashVaultListener(this);
+        cashDirty.set(true); // Show the vault as it is now, whatever changed before the listener was added
+        timer.start();
+    }
+
+    /**
+     * Stops listening to changes and redrawing the dashboard. Must be called on the JavaFX application thread.
+     */
+    public void stop() {
+        timer.stop();
+        Product.removeProductListener(this);
+        cashVault.removeCashVaultListener(this);
+    }
+
+    @Override
+    public void stockChanged(Product product, int oldStock, int newStock) {
+        markDirty(product);
+    }
+
+    @Override
+    public void priceChanged(Product product, int oldPrice, int newPrice) {
+        markDirty(product);
+    }
+
+    /**
+     * Marks the rows of a product for the next frame. Products outside the slots are ignored.
+     */
+    private void markDirty(Product product) {
+        int[] affected = rowsOfProduct.get(product);
+        if (affected == null) {
+            return;
+        }
+        synchronized (dirtyRows) {
+            for (int row : affected) {
+                dirtyRows.set(row);
+            }
+        }
+        stockDirty.set(true);
+    }
+
+    @Override
+    public void cashChanged(CashVault vault) {
+        cashDirty.set(true);
+    }
+
+    /**
+     * Applies the changes recorded since the last frame on the JavaFX application thread.
+     * Frames without changes only read two flags.
+     */
+    private void redraw() {
+        if (stockDirty.getAndSet(false)) {
+            BitSet refresh;
+            synchronized (dirtyRows) {
+                refresh = (BitSet) dirtyRows.clone();
+                dirtyRows.clear();
+            }
+            for (int row = refresh.nextSetBit(0); row >= 0; row = refresh.nextSetBit(row + 1)) {
+                rows.set(row, rows.get(row)); // Replacing a row with itself makes the list view redraw it
+            }
+        }
+        if (cashDirty.getAndSet(false)) {
+            cashVault.snapshot(cashCounts);
+            int total = 0;
+            for (int i = 0; i < DENOMINATIONS.length; i++) {
+                total += cashCounts[i] * DENOMINATIONS[i].getValue();
+                cashCountLabels[i].setText(DENOMINATIONS[i].getValue() + ": " + cashCounts[i]);
+            }
+            cashTotalLabel.setText("Total: " + total);
+        }
+    }
+
+    /**
+     * The SlotCell class shows the product and the stock of one slot.
+     */
+    private static class SlotCell extends ListCell<Product> {
+        @Override
+        protected void updateItem(Product product, boolean empty) {
+            super.updateItem(product, empty);
+            if (empty || product == null) {
+                setText(null);
+            } else if (product.isEmpty()) {
+                setText("Slot " + (getIndex() + 1) + ": empty");
+            } else {
+                setText(String.format("Slot %d: %s - Price: %d - Stock: %d",
+                        getIndex() + 1, product.getName(), product.getPrice(), product.getStock()));
+            }
+        }
+    }
+}
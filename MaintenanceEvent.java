@@ -0,0 +1,27 @@
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The MaintenanceEvent class records a maintenance operation of the {@link MaintenanceManager}:
+ * restocking, replenishing cash or collecting money. The amount is the number of items restocked or the
+ * value of the bills, and the bills are the ones added or counted per denomination.
+ *
+ * @author Ceriola, Antonio
+ */
+@Name("vendingmachine.Maintenance")
+@Label("Maintenance")
+@Description("Restock, cash replenishment or money collection")
+public class MaintenanceEvent extends VendingMachineEvent {
+    @Label("Operation")
+    String operation;
+
+    /**
+     * Creates an event for the specified operation.
+     *
+     * @param operation The kind of maintenance operation.
+     */
+    MaintenanceEvent(JournalRecordType operation) {
+        this.operation = operation.name();
+    }
+}
@@ -1,5 +1,9 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The MaintenanceManager class represents the maintenance manager of a vending machine.
@@ -9,11 +13,17 @@ import java.util.List;
  * @author Ceriola, Antonio
  */
 public class MaintenanceManager {
+    private static final int MIN_PAR_LEVEL = 1; // A product that ever sold stays on sale even when its demand has faded
     private Slots slots;
-    private CashBundle cashBundle;
+    private CashVault cashVault;
     private int numSlots;
     private int numItemsPerSlot;
     private List<Product> products;
+    private volatile ProductIndex productIndex; // Products by selection number, rebuilt after products are added
+    private volatile int modifications; // Bumped after every added product; products are only added by one thread
+    private TransactionJournal journal;
+    private DemandForecaster demandForecaster;
+    private long restockIntervalNanos;
 
         /**
      * Constructs a new MaintenanceManager with the specified number of slots and items per slot.
@@ -22,25 +32,86 @@ public class MaintenanceManager {
      * @param numItemsPerSlot The number of items per slot in the vending machine.
      */
     public MaintenanceManager(int numSlots, int numItemsPerSlot) {
+        this(numSlots, numItemsPerSlot, new CashVault(25, 25, 25, 25, 25)); // Starting float, so the first purchases can get change
+    }
+
+    /**
+     * Constructs a new MaintenanceManager holding the bills of the specified vault, for example a restored one.
+     *
+     * @param numSlots The number of slots in the vending machine.
+     * @param numItemsPerSlot The number of items per slot in the vending machine.
+     * @param cashVault The vault holding the bills of the vending machine.
+     */
+    public MaintenanceManager(int numSlots, int numItemsPerSlot, CashVault cashVault) {
         this.numSlots = numSlots;
         this.numItemsPerSlot = numItemsPerSlot;
         slots = new Slots(numSlots, numItemsPerSlot);
-        cashBundle = new CashBundle(0, 0, 0, 0, 0);
+        this.cashVault = cashVault;
         products = new ArrayList<>();
     }
 
     /**
      * Restocks all products in the vending machine.
-     * Sets the stock of all products to a predefined value (e.g., 10) to restock them.
+     * Without a demand forecaster, tops the stock of all products up to a predefined value (e.g., 10) to restock them.
+     * With one, every product that has sold is topped up to its par level for the restock interval instead,
+     * at least {@value #MIN_PAR_LEVEL} and at most a full slot; products that never sold still get the predefined value.
+     * Stock is only ever added, with {@link Product#topUpStock(int)}, so sales made during the restock are kept.
+     * Every product that got items is journaled with the number of items it got.
      * Displays an information dialog using the MaintenanceManagerInterface to inform the user that all products have been restocked.
      */
     public void restockProducts() {
+        MaintenanceEvent event = new MaintenanceEvent(JournalRecordType.RESTOCK);
+        event.begin();
+        int itemsAdded = 0;
         for (Product product : products) {
-            product.setStock(10);
+            int added = product.topUpStock(getRestockTarget(product));
+            if (added > 0) {
+                itemsAdded += added;
+                journal(JournalRecordType.RESTOCK, product.getSelectionNumber(), added, null, null);
+            }
         }
+        commit(event, itemsAdded, null, "RESTOCKED " + products.size() + " PRODUCTS");
         MaintenanceManagerInterface.showInfoDialog("All products have been restocked.");
     }
 
+    /**
+     * Gets the stock a product is restocked to.
+     *
+     * @param product The product to restock.
+     * @return The forecast par level, or 10 if there is no forecast for the product.
+     */
+    private int getRestockTarget(Product product) {
+        if (demandForecaster == null || !demandForecaster.hasSales(product.getSelectionNumber())) {
+            return 10;
+        }
+        int parLevel = demandForecaster.getParLevel(product.getSelectionNumber(), restockIntervalNanos, TimeUnit.NANOSECONDS);
+        return Math.min(Math.max(parLevel, MIN_PAR_LEVEL), numItemsPerSlot);
+    }
+
+    /**
+     * Sets the forecaster used to compute restock levels.
+     *
+     * @param demandForecaster The forecaster fed with the sales of this vending machine, or null to restock to a fixed level.
+     * @param restockInterval  The expected time until the next restock.
+     * @param unit             The unit of the restock interval.
+     */
+    public void setDemandForecaster(DemandForecaster demandForecaster, long restockInterval, TimeUnit unit) {
+        this.demandForecaster = demandForecaster;
+        this.restockIntervalNanos = unit.toNanos(restockInterval);
+    }
+
+    /**
+     * Finds the products expected to run out before the next restock.
+     *
+     * @return The products running out within the restock interval, or an empty list without a demand forecaster.
+     */
+    public List<Product> getProductsRunningOut() {
+        if (demandForecaster == null) {
+            return Collections.emptyList();
+        }
+        return demandForecaster.getProductsRunningOut(products, restockIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
     /**
      * Sets the price for a specific product slot.
      * Searches for the product with the given selection number in the products list.
@@ -54,6 +125,7 @@ public class MaintenanceManager {
         Product product = getProductBySelectionNumber(selectionNumber);
         if (product != null) {
             product.setPrice(price);
+            journal(JournalRecordType.PRICE_CHANGE, selectionNumber, price, null, null);
             MaintenanceManagerInterface.showInfoDialog("Price updated for product with selection number " + selectionNumber);
         } else {
             MaintenanceManagerInterface.showInfoDialog("No product found with selection number " + selectionNumber);
@@ -61,6 +133,42 @@ public class MaintenanceManager {
     }
 
 
+    /**
+     * Applies a price sheet in one pass. Every product is looked up in the selection number index and all prices are
+     * published together with {@link Product#setPrices(List, int[])}, so concurrent purchases and price readers see
+     * either the old prices or the new ones, never a mix. Displays a single information dialog summarizing the update.
+     *
+     * @param priceSheet The new price for each selection number.
+     * @return The number of products whose price was set.
+     */
+    public int setItemPrices(Map<Integer, Integer> priceSheet) {
+        MaintenanceEvent event = new MaintenanceEvent(JournalRecordType.PRICE_CHANGE);
+        event.begin();
+        List<Product> repriced = new ArrayList<>(priceSheet.size());
+        int[] prices = new int[priceSheet.size()];
+        List<Integer> unknown = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : priceSheet.entrySet()) {
+            Product product = getProductBySelectionNumber(entry.getKey());
+            if (product != null) {
+                prices[repriced.size()] = entry.getValue();
+                repriced.add(product);
+            } else {
+                unknown.add(entry.getKey());
+            }
+        }
+        Product.setPrices(repriced, Arrays.copyOf(prices, repriced.size()));
+        for (int i = 0; i < repriced.size(); i++) {
+            journal(JournalRecordType.PRICE_CHANGE, repriced.get(i).getSelectionNumber(), prices[i], null, null);
+        }
+        commit(event, repriced.size(), null, unknown.isEmpty() ? "REPRICED" : "REPRICED WITH " + unknown.size() + " UNKNOWN");
+        String message = "Prices updated for " + repriced.size() + " products.";
+        if (!unknown.isEmpty()) {
+            message += "\nNo product found with selection numbers " + unknown;
+        }
+        MaintenanceManagerInterface.showInfoDialog(message);
+        return repriced.size();
+    }
+
     /**
      * Adds a new product to the vending machine.
      *
@@ -68,6 +176,16 @@ public class MaintenanceManager {
      */
     public void addProduct(Product product) {
         products.add(product);
+        modifications++;
+    }
+
+    /**
+     * Gets the products of the vending machine.
+     *
+     * @return A read-only view of the products of the vending machine.
+     */
+    public List<Product> getProducts() {
+        return Collections.unmodifiableList(products);
     }
 
     /**
@@ -76,25 +194,32 @@ public class MaintenanceManager {
      * Displays an information dialog using the MaintenanceManagerInterface to inform the user about the replenishment.
      */
     public void replenishCash() {
-        if (cashBundle.getNumber5() < 25) {
-            cashBundle.setNumber5(25);
-            MaintenanceManagerInterface.showInfoDialog("Cash of 5 has been replenished.");
-        }
-        if (cashBundle.getNumber10() < 25) {
-            cashBundle.setNumber10(25);
-            MaintenanceManagerInterface.showInfoDialog("Cash of 10 has been replenished.");
-        }
-        if (cashBundle.getNumber20() < 25) {
-            cashBundle.setNumber20(25);
-            MaintenanceManagerInterface.showInfoDialog("Cash of 20 has been replenished.");
-        }
-        if (cashBundle.getNumber50() < 25) {
-            cashBundle.setNumber50(25);
-            MaintenanceManagerInterface.showInfoDialog("Cash of 50 has been replenished.");
+        int[] targets = new int[Cash.values().length];
+        Arrays.fill(targets, 25);
+        replenishCash(targets);
+    }
+
+    /**
+     * Replenishes the cash in the vending machine to a target per denomination, for example the float
+     * recommended by a {@link FloatOptimizer}. Denominations already at or above their target are left as they are.
+     * Displays an information dialog using the MaintenanceManagerInterface for every replenished denomination.
+     *
+     * @param targets The number of bills each denomination should have at least, indexed by {@link Cash#ordinal()}.
+     */
+    public void replenishCash(int[] targets) {
+        MaintenanceEvent event = new MaintenanceEvent(JournalRecordType.CASH_REPLENISH);
+        event.begin();
+        int[] added = new int[Cash.values().length]; // Counted by topUp itself, so concurrent sales are not folded in
+        for (Cash cash : Cash.values()) {
+            added[cash.ordinal()] = cashVault.topUp(cash, targets[cash.ordinal()]);
         }
-        if (cashBundle.getNumber100() < 25) {
-            cashBundle.setNumber100(25);
-            MaintenanceManagerInterface.showInfoDialog("Cash of 100 has been replenished.");
+        int addedTotal = new CashBundle(added).getTotal();
+        journal(JournalRecordType.CASH_REPLENISH, -1, addedTotal, added, null);
+        commit(event, addedTotal, added, addedTotal > 0 ? "REPLENISHED" : "NOTHING_TO_REPLENISH");
+        for (Cash cash : Cash.values()) {
+            if (added[cash.ordinal()] > 0) {
+                MaintenanceManagerInterface.showInfoDialog("Cash of " + cash.getValue() + " has been replenished.");
+            }
         }
     }
 
@@ -104,6 +229,11 @@ public class MaintenanceManager {
      * and the denominations with amounts above the threshold using the MaintenanceManagerInterface.
      */
     public void collectMoney() {
+        MaintenanceEvent event = new MaintenanceEvent(JournalRecordType.CASH_COLLECT);
+        event.begin();
+        CashBundle cashBundle = cashVault.snapshot();
+        journal(JournalRecordType.CASH_COLLECT, -1, cashBundle.getTotal(), cashBundle.toArray(), null);
+        commit(event, cashBundle.getTotal(), cashBundle.toArray(), "COUNTED");
         String message = "Total cash in the machine: " + cashBundle.getTotal() + "\n";
         message += "Cash values over 25:\n";
         if (cashBundle.getNumber5() > 25) {
@@ -126,19 +256,82 @@ public class MaintenanceManager {
 
     /**
      * Helper method to get a product from the products list based on its selection number.
-     * Searches for the product with the given selection number in the products list.
+     * Looks the product up in the selection number index of the products list.
      * If found, returns the product. Otherwise, returns null.
      *
      * @param selectionNumber The selection number of the product to find.
      * @return The product with the given selection number, or null if not found.
      */
     private Product getProductBySelectionNumber(int selectionNumber) {
-        for (Product product : products) {
-            if (product.getSelectionNumber() == selectionNumber) {
-                return product;
-            }
+        ProductIndex index = productIndex;
+        int modification = modifications;
+        if (index == null || index.getStamp() != modification || !index.isCurrent()) {
+            index = new ProductIndex(products, modification);
+            productIndex = index;
         }
-        return null;
+        return index.get(selectionNumber);
+    }
+
+    /**
+     * Sets the journal every maintenance operation is recorded in.
+     *
+     * @param journal The transaction journal, or null to stop journaling.
+     */
+    public void setJournal(TransactionJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Records a maintenance operation in the journal, if there is one.
+     *
+     * @param type            The kind of operation.
+     * @param selectionNumber The selection number of the product, or -1 for cash operations.
+     * @param amount          The stock, price or cash amount of the operation.
+     * @param added           The bills added per denomination, or null for none.
+     * @param removed         The bills removed per denomination, or null for none.
+     */
+    private void journal(JournalRecordType type, int selectionNumber, int amount, int[] added, int[] removed) {
+        if (journal != null) {
+            journal.append(type, 0, selectionNumber, amount, added, removed);
+        }
+    }
+
+    /**
+     * Ends a maintenance flight recorder event and commits it if a recording wants it.
+     * Called before any dialog is shown, so the event does not include the time the dialog stays open.
+     *
+     * @param event   The event started at the beginning of the operation.
+     * @param amount  The number of items restocked or the value of the bills.
+     * @param bills   The bills added or counted per denomination, or null for none.
+     * @param outcome The outcome of the operation.
+     */
+    private static void commit(MaintenanceEvent event, int amount, int[] bills, String outcome) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.amount = amount;
+            event.setBills(bills);
+            event.outcome = outcome;
+            event.commit();
+        }
+    }
+
+    /**
+     * Gets the CashVault holding the bills of the vending machine.
+     * Customer transactions should pay out of the same vault so that maintenance and sales see the same float.
+     *
+     * @return The CashVault of the vending machine.
+     */
+    public CashVault getCashVault() {
+        return cashVault;
+    }
+
+    /**
+     * Gets a consistent copy of the bills currently held by the vending machine.
+     *
+     * @return A CashBundle holding the current number of bills per denomination.
+     */
+    public CashBundle getCashBundle() {
+        return cashVault.snapshot();
     }
 
     /**
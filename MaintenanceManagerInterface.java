@@ -1,14 +1,18 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
-import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.TextInputDialog;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
 import javafx.stage.Stage;
 
 /**
  * The MaintenanceManagerInterface class represents the user interface for the maintenance manager of a vending machine.
- * It provides functionality for restocking products, setting item prices, replenishing cash, and collecting money.
+ * It provides functionality for restocking products, setting item prices, replenishing cash, and collecting money,
+ * next to a {@link MaintenanceDashboard} showing the stock and the cash of the machine as they change.
  * 
  * @author Ceriola, Antonio
  */
@@ -27,6 +31,7 @@ public class MaintenanceManagerInterface {
     /**
      * Starts the maintenance menu user interface.
      * Creates and displays the maintenance menu using JavaFX components in a separate window.
+     * The live dashboard runs while the window is open.
      *
      * @param primaryStage The primary stage to display the maintenance menu.
      */
@@ -44,15 +49,25 @@ public class MaintenanceManagerInterface {
         setItemPriceButton.setOnAction(e -> setItemPrice());
         gridPane.add(setItemPriceButton, 0, 1);
 
+        Button setItemPricesButton = new Button("Set All Prices");
+        setItemPricesButton.setOnAction(e -> setItemPrices());
+        gridPane.add(setItemPricesButton, 0, 2);
+
         Button replenishCashButton = new Button("Replenish Cash");
         replenishCashButton.setOnAction(e -> replenishCash());
-        gridPane.add(replenishCashButton, 0, 2);
+        gridPane.add(replenishCashButton, 0, 3);
 
         Button collectMoneyButton = new Button("Collect Money");
         collectMoneyButton.setOnAction(e -> collectMoney());
-        gridPane.add(collectMoneyButton, 0, 3);
+        gridPane.add(collectMoneyButton, 0, 4);
+
+        MaintenanceDashboard dashboard = new MaintenanceDashboard(maintenanceManager.getSlots(), maintenanceManager.getCashVault());
+        dashboard.start();
+        primaryStage.setOnHidden(e -> dashboard.stop());
 
-        Scene scene = new Scene(gridPane, 300, 200);
+        HBox hbox = new HBox(10, gridPane, dashboard.getView());
+        hbox.setPadding(new Insets(0, 20, 20, 0));
+        Scene scene = new Scene(hbox, 800, 600);
         primaryStage.setTitle("Maintenance Menu");
         primaryStage.setScene(scene);
         primaryStage.show();
@@ -87,6 +102,34 @@ public class MaintenanceManagerInterface {
         });
     }
 
+    /**
+     * Sets the prices of several products at once.
+     * Prompts the user for a price sheet such as "1=120, 2=90" using a TextInputDialog and applies it with the
+     * setItemPrices() method of the MaintenanceManager, which shows a single summary of the update.
+     */
+    private void setItemPrices() {
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle("Set All Prices");
+        dialog.setHeaderText("Enter the new prices as selection number=price, separated by commas.");
+        dialog.setContentText("Prices:");
+        dialog.showAndWait().ifPresent(sheetInput -> {
+            Map<Integer, Integer> priceSheet = new LinkedHashMap<>();
+            try {
+                for (String entry : sheetInput.split(",")) {
+                    String[] parts = entry.split("=");
+                    if (parts.length != 2) {
+                        throw new NumberFormatException(entry);
+                    }
+                    priceSheet.put(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+                }
+            } catch (NumberFormatException ex) {
+                showInfoDialog("Invalid price sheet. Please enter selection number=price pairs separated by commas.");
+                return;
+            }
+            maintenanceManager.setItemPrices(priceSheet);
+        });
+    }
+
     /**
      * Helper method to show a dialog for price input.
      * Prompts the user to enter the new price using a TextInputDialog.
@@ -130,10 +173,6 @@ public class MaintenanceManagerInterface {
      * @param message The message to display in the information dialog.
      */
     public static void showInfoDialog(String message) {
-        Alert alert = new Alert(Alert.AlertType.INFORMATION);
-        alert.setTitle("Information");
-        alert.setHeaderText(null);
-        alert.setContentText(message);
-        alert.showAndWait();
+        DialogService.getInstance().showInfo(message);
     }
 }
\ No newline at end of file
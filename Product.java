@@ -5,19 +5,29 @@
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
 
 public class  Product {
     public static final Product EMPTY = new Product(-1, 0, 0, 0, false, "");
     public static final Product CUSTOM = new Product(0, 0, 0, 0, false, "");
-    public static List<Product> allProducts = new ArrayList<>(); 
-    public static List<ProductSet> productSets = new ArrayList<>();
+    private static final AtomicReference<Catalog> catalog = new AtomicReference<>();
+    private static final AtomicInteger renumberings = new AtomicInteger(); // Increased by every selection number change
+    private static volatile ProductListener[] listeners = new ProductListener[0];
+    private static final Object priceSheetLock = new Object();
+    private static volatile long priceSequence; // Odd while a price sheet is being published
 
     private int selectionNumber;
-    private int price;
+    private volatile int price;
     private int calories;
     private boolean soldIndiv;
-    private int stock;
+    private volatile int stock; // Written only under the product's StockLocks stripe, read without locking
     private String name;
     private boolean partOfSet;
 
@@ -25,6 +35,7 @@ public class  Product {
      * creates the preset products that the user can select
      */
     static {
+        List<Product> allProducts = new ArrayList<>();
         allProducts.add(new Product(1, 10, 100, 250, true, "Vanilla Ice Cream"));
         allProducts.add(new Product(2, 10, 100, 250, true, "Chocolate Ice Cream"));
         allProducts.add(new Product(3, 10, 100, 250, true, "Coffee Ice Cream"));
@@ -58,15 +69,75 @@ public class  Product {
             milkshake.addIncludedProduct(new Product(16, 10, 50, 100, false, "Sliced Banana"), 1);
             milkshake.addIncludedProduct(new Product(20, 10, 25, 25, false, "Milk"), 1);
 
-        // Add the product sets to the allProducts list
-        productSets.add(bananaSplit);
-        productSets.add(iceCreamSandwich);
-        productSets.add(milkshake);
+        // Publish the preset products and product sets as the first catalog
+        catalog.set(new Catalog(allProducts, Arrays.asList(bananaSplit, iceCreamSandwich, milkshake)));
+    }
 
+    /**
+     * Returns the current catalog. The catalog never changes once returned, so it can be read
+     * from any thread without locking; later changes publish a new version.
+     *
+     * @return the current catalog
+     */
+    public static Catalog getCatalog() {
+        return catalog.get();
     }
 
+    /**
+     * Publishes the next version of the catalog. The update is retried if another writer published
+     * a version meanwhile, so it must not have side effects.
+     *
+     * @param update builds the next version from the current one
+     * @return the published version
+     */
+    public static Catalog updateCatalog(UnaryOperator<Catalog> update) {
+        return catalog.updateAndGet(update);
+    }
+
+    /**
+     * 
+     * @return the products of the current catalog, as a read-only list
+     */
     public static List<Product> getAllProducts() {
-        return allProducts;
+        return getCatalog().getProducts();
+    }
+
+    /**
+     * Adds a product to the catalog by publishing a new version of it.
+     *
+     * @param product the product to add
+     */
+    public static void addToCatalog(Product product) {
+        addAllToCatalog(Collections.singletonList(product));
+    }
+
+    /**
+     * Adds several products to the catalog by publishing a single new version of it.
+     *
+     * @param products the products to add
+     */
+    public static void addAllToCatalog(Collection<Product> products) {
+        updateCatalog(current -> current.withProducts(products));
+    }
+
+    /**
+     * Replaces the whole catalog, for example with one restored from a {@link MachineSnapshot}.
+     *
+     * @param products    the products of the new catalog
+     * @param sets        the product sets of the new catalog
+     */
+    public static void restoreCatalog(List<Product> products, List<ProductSet> sets) {
+        updateCatalog(current -> current.withContents(products, sets));
+    }
+
+    /**
+     * Returns how many times any product's selection number changed, whether the product is in the catalog or not,
+     * so {@link ProductIndex} uses it to know when it has to be rebuilt.
+     *
+     * @return the number of selection number changes so far
+     */
+    static int getRenumberCount() {
+        return renumberings.get();
     }
 
     /**
@@ -108,7 +179,7 @@ public class  Product {
      */
     public static Product[] getCustomProducts() {
         List<Product> customProductsList = new ArrayList<>();
-        for (Product product : allProducts) {
+        for (Product product : getCatalog().getProducts()) {
             if (product != EMPTY && product != CUSTOM) {
                 customProductsList.add(product);
             }
@@ -178,7 +249,14 @@ public class  Product {
      * @param selectionNumber the new selection number.
      */
     public void setSelectionNumber(int selectionNumber){
-        this.selectionNumber = selectionNumber;
+        if (this.selectionNumber != selectionNumber) {
+            this.selectionNumber = selectionNumber;
+            renumberings.incrementAndGet(); // After the write: an index built from now on sees the new number
+            if (getCatalog() != null) {
+                // Returning the current version publishes nothing, so products outside the catalog leave it alone
+                updateCatalog(current -> current.contains(this) ? current.reindexed() : current);
+            }
+        }
     }
 
     /**
@@ -187,7 +265,85 @@ public class  Product {
      * @param price the new price of the product.
      */
     public void setPrice(int price){
+        int oldPrice = this.price;
         this.price = price;
+        if (oldPrice != price) {
+            republishPrices(Collections.singletonList(this));
+            firePriceChanged(oldPrice, price);
+        }
+    }
+
+    /**
+     * Sets the prices of several products as one atomic step. Readers that read prices between
+     * {@link #beginPriceRead()} and {@link #validatePriceRead(long)} see either all the old prices or all the new ones.
+     * Price listeners are notified once every price is published.
+     *
+     * @param products the products to reprice
+     * @param prices   the new prices, in the same order as the products
+     */
+    public static void setPrices(List<Product> products, int[] prices) {
+        if (products.size() != prices.length) {
+            throw new IllegalArgumentException("Expected " + products.size() + " prices but got " + prices.length);
+        }
+        int[] oldPrices = new int[prices.length];
+        synchronized (priceSheetLock) {
+            priceSequence++; // Odd: readers retry until the sheet is complete
+            for (int i = 0; i < prices.length; i++) {
+                Product product = products.get(i);
+                oldPrices[i] = product.price;
+                product.price = prices[i];
+            }
+            priceSequence++;
+        }
+        republishPrices(products);
+        for (int i = 0; i < prices.length; i++) {
+            if (oldPrices[i] != prices[i]) {
+                products.get(i).firePriceChanged(oldPrices[i], prices[i]);
+            }
+        }
+    }
+
+    /**
+     * Publishes a new catalog version if the catalog holds the price of any of the repriced products,
+     * so readers holding the previous version keep its prices.
+     *
+     * @param repriced the products whose price changed
+     */
+    private static void republishPrices(List<Product> repriced) {
+        if (getCatalog() != null) {
+            updateCatalog(current -> {
+                for (Product product : repriced) {
+                    if (current.hasPrice(product)) {
+                        return current.nextVersion();
+                    }
+                }
+                return current;
+            });
+        }
+    }
+
+    /**
+     * Starts reading several prices that must be consistent with each other, waiting while a price sheet is being published.
+     * 
+     * @return the version to pass to {@link #validatePriceRead(long)} after reading the prices
+     */
+    public static long beginPriceRead() {
+        long sequence = priceSequence;
+        while ((sequence & 1) != 0) {
+            Thread.onSpinWait();
+            sequence = priceSequence;
+        }
+        return sequence;
+    }
+
+    /**
+     * Checks that no price sheet was published while prices were read; the prices must be read again if it was.
+     * 
+     * @param version the value returned by {@link #beginPriceRead()}
+     * @return true if the prices read since {@link #beginPriceRead()} belong to the same price sheet
+     */
+    public static boolean validatePriceRead(long version) {
+        return priceSequence == version;
     }
 
     /**
@@ -223,7 +379,103 @@ public class  Product {
      * @param stock The new stock quantity.
      */
     public void setStock(int stock){
-        this.stock = stock;
+        ReentrantLock lock = StockLocks.lockFor(this);
+        int oldStock;
+        lock.lock();
+        try {
+            oldStock = this.stock;
+            this.stock = stock;
+        } finally {
+            lock.unlock();
+        }
+        fireStockChanged(oldStock, stock);
+    }
+
+    /**
+     * Raises the stock of the product to the target if it is below it, like {@link CashVault#topUp(Cash, int)} does for bills.
+     * The check and the update happen under the product's {@link StockLocks} stripe, so a sale made meanwhile is
+     * never overwritten and the number of items added is exact.
+     *
+     * @param target The stock the product should have at least.
+     * @return The number of items added, 0 if the stock was already at or above the target.
+     */
+    public int topUpStock(int target) {
+        ReentrantLock lock = StockLocks.lockFor(this);
+        int oldStock;
+        lock.lock();
+        try {
+            oldStock = stock;
+            if (oldStock >= target) {
+                return 0;
+            }
+            stock = target;
+        } finally {
+            lock.unlock();
+        }
+        fireStockChanged(oldStock, target);
+        return target - oldStock;
+    }
+
+    /**
+     * Adds items to the stock of the product, for example when a sale is rolled back.
+     * 
+     * @param quantity The number of items to add.
+     */
+    public void addStock(int quantity) {
+        ReentrantLock lock = StockLocks.lockFor(this);
+        int oldStock;
+        lock.lock();
+        try {
+            oldStock = stock;
+            stock = oldStock + quantity;
+        } finally {
+            lock.unlock();
+        }
+        fireStockChanged(oldStock, oldStock + quantity);
+    }
+
+    /**
+     * Takes items out of stock if enough of them are left. The check and the update happen under the
+     * product's {@link StockLocks} stripe, the lock every stock writer takes, so concurrent buyers never lose
+     * a decrement or oversell and a {@link ProductSet} reservation holding the stripe is never interleaved.
+     * Listeners are told after the lock is released. Does not allocate.
+     * 
+     * @param quantity The number of items to take out of stock.
+     * @return true if the stock was reduced, false if fewer than quantity items are left.
+     */
+    public boolean tryDecrement(int quantity) {
+        long start = MachineMetrics.startTimer();
+        ReentrantLock lock = StockLocks.lockFor(this);
+        int current;
+        lock.lock();
+        try {
+            current = stock;
+            if (current >= quantity) {
+                stock = current - quantity;
+            }
+        } finally {
+            lock.unlock();
+        }
+        boolean taken = current >= quantity;
+        MachineMetrics.recordStockDecrement(start, selectionNumber, taken);
+        if (taken) {
+            fireStockChanged(current, current - quantity);
+        }
+        return taken;
+    }
+
+    /**
+     * Takes items out of stock without checking or notifying anyone. The caller must hold the product's
+     * {@link StockLocks} stripe, have checked that enough items are left, and tell the listeners with
+     * {@link #fireStockChanged(int, int)} once the lock is released.
+     * 
+     * @param quantity The number of items to take out of stock, or minus the number of items to put back.
+     * @return the stock before the items were taken
+     */
+    int takeStockLocked(int quantity) {
+        int oldStock = stock;
+        stock = oldStock - quantity;
+        return oldStock;
     }
 
     /**
@@ -240,9 +492,7 @@ public class  Product {
      * 
      */
     public void reduceStock() {
-        if (stock > 0) {
-            stock--;
-        }
+        tryDecrement(1);
     }
 
     /**
@@ -252,12 +502,10 @@ public class  Product {
      * @return The Product constant matching the selection number, or EMPTY if not found.
      */
     public static Product valueOf(int selectionNumber) {
-        for (Product product : allProducts) {
-            if (selectionNumber == product.getSelectionNumber()) {
-                return product;
-            }
-        }
-        return EMPTY;
+        long start = MachineMetrics.startTimer();
+        Product product = getCatalog().get(selectionNumber);
+        MachineMetrics.recordProductLookup(start);
+        return product != null ? product : EMPTY;
     }
 
         /**
@@ -269,10 +517,15 @@ public class  Product {
      * @param soldIndiv indicatd if the product can be bought individually
      */
     public void updateDetails(String name, int price, int calories, boolean soldIndiv) {
+        int oldPrice = this.price;
         this.name = name;
         this.price = price;
         this.calories = calories;
         this.soldIndiv = soldIndiv;
+        if (oldPrice != price) {
+            republishPrices(Collections.singletonList(this));
+            firePriceChanged(oldPrice, price);
+        }
     }
 
     /**
@@ -283,9 +536,60 @@ public class  Product {
         return this == EMPTY;
     }
 
+    /**
+     * Reduces the stock quantity of the product if enough items are left.
+     * 
+     * @param quantity the number of items to take out of stock.
+     */
     public void reduceStock(int quantity) {
-        if (stock >= quantity) {
-            stock -= quantity;
+        tryDecrement(quantity);
+    }
+
+    /**
+     * Registers a listener that is notified whenever the stock of any product changes.
+     * 
+     * @param listener the listener to add
+     */
+    public static synchronized void addProductListener(ProductListener listener) {
+        ProductListener[] grown = Arrays.copyOf(listeners, listeners.length + 1);
+        grown[grown.length - 1] = listener;
+        listeners = grown;
+    }
+
+    /**
+     * Removes a previously registered listener.
+     * 
+     * @param listener the listener to remove
+     */
+    public static synchronized void removeProductListener(ProductListener listener) {
+        List<ProductListener> remaining = new ArrayList<>(Arrays.asList(listeners));
+        remaining.remove(listener);
+        listeners = remaining.toArray(new ProductListener[0]);
+    }
+
+    /**
+     * Notifies the registered listeners of a stock change. Iterates over the listener array directly so the sale path does not allocate.
+     * 
+     * @param oldStock the stock before the change
+     * @param newStock the stock after the change
+     */
+    void fireStockChanged(int oldStock, int newStock) {
+        ProductListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            current[i].stockChanged(this, oldStock, newStock);
+        }
+    }
+
+    /**
+     * Tells every registered listener that the price of this product changed.
+     * 
+     * @param oldPrice the price before the change
+     * @param newPrice the price after the change
+     */
+    private void firePriceChanged(int oldPrice, int newPrice) {
+        ProductListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            current[i].priceChanged(this, oldPrice, newPrice);
         }
     }
 
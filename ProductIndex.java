@@ -0,0 +1,106 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ProductIndex class finds products of a list by their selection number in constant time.
+ * An index is immutable: it is fully built from the list before anyone can read it and never changes afterwards,
+ * so owners publish it through a volatile field and any thread can look products up without locking.
+ * Owners build a new index when their list changes, or when {@link #isCurrent()} reports that a
+ * product's selection number changed since the index was built.
+ *
+ * <p>
+ * When the selection numbers are dense the index is an array keyed by selection number. When they are sparse,
+ * the array would be more than {@value #MAX_SLACK} times longer than the list, and longer than
+ * {@value #MIN_DENSE_LENGTH}, a hash map is used instead, so a single product with a huge selection number
+ * does not allocate a huge array. When several products share a selection number the first one in the list
+ * wins, exactly like a linear scan would.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class ProductIndex {
+    private static final int MIN_DENSE_LENGTH = 1024; // Shorter arrays are always dense
+    private static final int MAX_SLACK = 4;           // Dense arrays are at most this many times longer than the list
+
+    private final Product[] bySelectionNumber;        // Dense index, or null when the index is sparse
+    private final Map<Integer, Product> sparse;       // Sparse index, or null when the index is dense
+    private final int stamp;
+    private final int renumberCount;                  // Product.getRenumberCount() when the index was built
+
+    /**
+     * Builds an index over the specified list of products.
+     *
+     * @param products The list of products to index. The list stays owned by the caller and is not kept.
+     */
+    public ProductIndex(List<Product> products) {
+        this(products, 0);
+    }
+
+    /**
+     * Builds an index over the specified list of products, tagged with a stamp of the owner's choosing,
+     * typically a modification count of the list read before building, so the owner can tell whether its list
+     * changed since.
+     *
+     * @param products The list of products to index. The list stays owned by the caller and is not kept.
+     * @param stamp    The stamp of the index.
+     */
+    public ProductIndex(List<Product> products, int stamp) {
+        this.stamp = stamp;
+        this.renumberCount = Product.getRenumberCount(); // Read first: a renumbering during the build makes the index stale
+        int maxSelectionNumber = -1;
+        for (Product product : products) {
+            maxSelectionNumber = Math.max(maxSelectionNumber, product.getSelectionNumber());
+        }
+        if (maxSelectionNumber < Math.max(MIN_DENSE_LENGTH, (long) products.size() * MAX_SLACK)) {
+            bySelectionNumber = new Product[maxSelectionNumber + 1];
+            sparse = null;
+            for (Product product : products) {
+                int selectionNumber = product.getSelectionNumber();
+                if (selectionNumber >= 0 && bySelectionNumber[selectionNumber] == null) { // EMPTY and other placeholders are never looked up
+                    bySelectionNumber[selectionNumber] = product;
+                }
+            }
+        } else {
+            bySelectionNumber = null;
+            sparse = new HashMap<>();
+            for (Product product : products) {
+                if (product.getSelectionNumber() >= 0) {
+                    sparse.putIfAbsent(product.getSelectionNumber(), product);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the product with the specified selection number.
+     *
+     * @param selectionNumber The selection number of the product to find.
+     * @return The first product in the list with that selection number, or null if there is none.
+     */
+    public Product get(int selectionNumber) {
+        if (bySelectionNumber == null) {
+            return sparse.get(selectionNumber);
+        }
+        if (selectionNumber < 0 || selectionNumber >= bySelectionNumber.length) {
+            return null;
+        }
+        return bySelectionNumber[selectionNumber];
+    }
+
+    /**
+     * @return the stamp the index was built with
+     */
+    public int getStamp() {
+        return stamp;
+    }
+
+    /**
+     * Tells whether no product's selection number changed since the index was built.
+     *
+     * @return true if the index still matches the selection numbers of its products.
+     */
+    public boolean isCurrent() {
+        return renumberCount == Product.getRenumberCount();
+    }
+}
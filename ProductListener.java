@@ -0,0 +1,32 @@
+/**
+ * The ProductListener interface is implemented by classes that want to observe changes to products,
+ * such as user interfaces and sales analytics, without polling.
+ *
+ * <p>
+ * Listeners are called synchronously on the thread that changed the product, right after the change,
+ * so they must be fast and must not block. Register them with {@link Product#addProductListener(ProductListener)}.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public interface ProductListener {
+
+    /**
+     * Called after the stock of a product changed.
+     *
+     * @param product  The product whose stock changed.
+     * @param oldStock The stock before the change.
+     * @param newStock The stock after the change.
+     */
+    void stockChanged(Product product, int oldStock, int newStock);
+
+    /**
+     * Called after the price of a product changed. Does nothing unless overridden.
+     *
+     * @param product  The product whose price changed.
+     * @param oldPrice The price before the change.
+     * @param newPrice The price after the change.
+     */
+    default void priceChanged(Product product, int oldPrice, int newPrice) {
+    }
+}
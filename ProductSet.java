@@ -1,5 +1,6 @@
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -11,7 +12,8 @@ import java.util.Map;
 
 public class ProductSet {
     private Product mainProduct;
-    private Map<Product, Integer> includedProducts;
+    private volatile Map<Product, Integer> includedProducts; // Read-only; replaced as a whole by every edit
+    private volatile Components components; // Stock reservation plan, rebuilt when the set changes
 
     /**
      * Constructs a new ProductSet with the specified main product details.
@@ -26,17 +28,26 @@ public class ProductSet {
      */
     public ProductSet(int selectionNumber, int stock, int price, int calories, boolean soldIndiv, String name) {
         this.mainProduct = new Product(selectionNumber, stock, price, calories, soldIndiv, name);
-        includedProducts = new HashMap<>();
+        includedProducts = Collections.emptyMap();
+        components = new Components(mainProduct, includedProducts);
     }
 
     /**
      * Adds an included product to the product set with the specified quantity.
+     * The contents are copied on write, and a set of the catalog publishes a new catalog version,
+     * so readers holding an older {@link Catalog} keep seeing the contents it was published with.
      *
      * @param product  The included product to add.
      * @param quantity The quantity of the included product in the set.
      */
     public void addIncludedProduct(Product product, int quantity) {
-        includedProducts.put(product, quantity);
+        Map<Product, Integer> grown = new HashMap<>(includedProducts); // Copy on write: maps already handed out never change
+        grown.put(product, quantity);
+        includedProducts = Collections.unmodifiableMap(grown);
+        components = new Components(mainProduct, includedProducts);
+        if (Product.getCatalog() != null) {
+            Product.updateCatalog(current -> current.contains(this) ? current.nextVersion() : current);
+        }
     }
 
     /**
@@ -51,7 +62,7 @@ public class ProductSet {
     /**
      * Retrieves the map of included products and their quantities in the set.
      *
-     * @return A map of included products and their quantities.
+     * @return A read-only map of included products and their quantities, which later edits of the set do not change.
      */
     public Map<Product, Integer> getIncludedProducts() {
         return includedProducts;
@@ -59,17 +70,24 @@ public class ProductSet {
     
      /**
      * Calculates the total price of the product set, including the main product and all included products.
+     * The prices are read again if a price sheet was published meanwhile, so the total never mixes old and new prices.
      *
      * @return The total price of the product set.
      */
     public int getTotalPrice() {
-        int totalPrice = mainProduct.getPrice();
-        for (Map.Entry<Product, Integer> entry : includedProducts.entrySet()) {
-            Product includedProduct = entry.getKey();
-            int quantity = entry.getValue();
-            totalPrice += includedProduct.getPrice() * quantity;
+        Map<Product, Integer> contents = includedProducts;
+        while (true) {
+            long version = Product.beginPriceRead();
+            int totalPrice = mainProduct.getPrice();
+            for (Map.Entry<Product, Integer> entry : contents.entrySet()) {
+                Product includedProduct = entry.getKey();
+                int quantity = entry.getValue();
+                totalPrice += includedProduct.getPrice() * quantity;
+            }
+            if (Product.validatePriceRead(version)) {
+                return totalPrice;
+            }
         }
-        return totalPrice;
     }
     
     /**
@@ -90,14 +108,142 @@ public class ProductSet {
     /**
      * Reduces the stock of products in the set when it is purchased.
      * The stock of the main product is reduced by 1, and the stock of included products is reduced by their quantities.
+     * Nothing is reduced if any of the products is short on stock.
      */
     public void reduceStock() {
-        mainProduct.reduceStock(1);
-        for (Map.Entry<Product, Integer> entry : includedProducts.entrySet()) {
-            Product includedProduct = entry.getKey();
-            int quantity = entry.getValue();
-            includedProduct.reduceStock(quantity);
+        tryReduceStock();
+    }
+
+    /**
+     * Reserves the stock of every product in the set as one all-or-nothing operation.
+     * The stripe locks of all products are taken in ascending stripe order, so buyers of overlapping sets cannot
+     * deadlock. Every stock writer, including single product sales and restocks, takes the same stripe lock, so
+     * while they are held the stock of the components cannot change: every component is checked first and only
+     * then taken out of stock. A short component therefore leaves the stock untouched, concurrent buyers never see
+     * a component that was taken and put back, and listeners are only told about the stock that was really taken.
+     *
+     * @return null if the stock of every product was reduced, otherwise the first product,
+     *         main product first, whose stock was too low; in that case no stock is reduced.
+     */
+    public Product tryReduceStock() {
+        long start = MachineMetrics.startTimer();
+        ProductSetReservationEvent event = new ProductSetReservationEvent();
+        event.begin();
+        Components plan = components;
+        Product shortProduct = reserve(plan);
+        event.end();
+        if (event.shouldCommit()) {
+            event.selectionNumber = mainProduct.getSelectionNumber();
+            event.amount = plan.products.length;
+            event.outcome = shortProduct == null ? "RESERVED" : "SHORT: " + shortProduct.getName();
+            event.commit();
+        }
+        // Only a short included product is a product stock-out; the set's own stock-outs are counted per set by
+        // MachineMetrics.recordSetTransaction, as the main product's selection number may belong to a single product
+        boolean componentShort = shortProduct != null && shortProduct != mainProduct;
+        MachineMetrics.recordStockDecrement(start, componentShort ? shortProduct.getSelectionNumber() : mainProduct.getSelectionNumber(),
+                !componentShort);
+        return shortProduct;
+    }
+
+    /**
+     * Puts back the stock taken by a successful {@link #tryReduceStock()}, for example when the purchase of the set
+     * fails afterwards because the machine cannot pay the change.
+     */
+    public void releaseStock() {
+        Components plan = components;
+        int[] oldStocks = new int[plan.products.length];
+        lock(plan.stripes);
+        try {
+            for (int i = 0; i < plan.products.length; i++) {
+                oldStocks[i] = plan.products[i].takeStockLocked(-plan.quantities[i]);
+            }
+        } finally {
+            unlock(plan.stripes);
+        }
+        for (int i = 0; i < plan.products.length; i++) {
+            plan.products[i].fireStockChanged(oldStocks[i], oldStocks[i] + plan.quantities[i]);
+        }
+    }
+
+    /**
+     * Takes every component of a reservation plan out of stock under the plan's stripe locks.
+     *
+     * @param plan The components of the set.
+     * @return null if every component was taken, otherwise the first one that was short.
+     */
+    private static Product reserve(Components plan) {
+        int[] oldStocks = new int[plan.products.length];
+        lock(plan.stripes);
+        try {
+            for (int i = 0; i < plan.products.length; i++) {
+                if (plan.products[i].getStock() < plan.quantities[i]) {
+                    return plan.products[i];
+                }
+            }
+            for (int i = 0; i < plan.products.length; i++) {
+                oldStocks[i] = plan.products[i].takeStockLocked(plan.quantities[i]);
+            }
+        } finally {
+            unlock(plan.stripes);
+        }
+        for (int i = 0; i < plan.products.length; i++) {
+            plan.products[i].fireStockChanged(oldStocks[i], oldStocks[i] - plan.quantities[i]);
+        }
+        return null;
+    }
+
+    /**
+     * Takes the specified stripe locks in the order given, which must be ascending.
+     */
+    private static void lock(int[] stripes) {
+        for (int i = 0; i < stripes.length; i++) {
+            StockLocks.lockForStripe(stripes[i]).lock();
+        }
+    }
+
+    /**
+     * Releases the specified stripe locks in reverse order.
+     */
+    private static void unlock(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            StockLocks.lockForStripe(stripes[i]).unlock();
+        }
+    }
+
+    /**
+     * The Components class is an immutable snapshot of the products a purchase of the set takes out of stock,
+     * together with the distinct stripe locks guarding them in the order they must be locked.
+     */
+    private static class Components {
+        private final Product[] products;
+        private final int[] quantities;
+        private final int[] stripes;
+
+        /**
+         * Builds the snapshot for a set.
+         *
+         * @param mainProduct      The main product of the set.
+         * @param includedProducts The included products and their quantities.
+         */
+        Components(Product mainProduct, Map<Product, Integer> includedProducts) {
+            products = new Product[includedProducts.size() + 1];
+            quantities = new int[products.length];
+            products[0] = mainProduct;
+            quantities[0] = 1;
+            int index = 1;
+            for (Map.Entry<Product, Integer> entry : includedProducts.entrySet()) {
+                products[index] = entry.getKey();
+                quantities[index] = entry.getValue();
+                index++;
+            }
+
+            int[] allStripes = new int[products.length];
+            for (int i = 0; i < products.length; i++) {
+                allStripes[i] = StockLocks.stripeOf(products[i]);
+            }
+            stripes = Arrays.stream(allStripes).sorted().distinct().toArray();
         }
     }
 
-}
+}
\ No newline at end of file
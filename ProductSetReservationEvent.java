@@ -0,0 +1,17 @@
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The ProductSetReservationEvent class records one attempt to take a {@link ProductSet} out of stock,
+ * including the time spent waiting for the stripe locks of its products. The selection number is the one
+ * of the main product, the amount is the number of products in the set and the outcome names the
+ * product that was short, if any.
+ *
+ * @author Ceriola, Antonio
+ */
+@Name("vendingmachine.ProductSetReservation")
+@Label("Product Set Reservation")
+@Description("Stock of a product set reserved as one operation")
+public class ProductSetReservationEvent extends VendingMachineEvent {
+}
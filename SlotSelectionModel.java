@@ -0,0 +1,181 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The SlotSelectionModel class tracks which product the operator picked for each slot while configuring a
+ * vending machine. Selections are stored by slot index in a bit set and a product array, so selecting or
+ * unselecting a slot takes constant time and walking the selection only visits the selected slots.
+ *
+ * <p>
+ * Every slot holds at most one product, like {@link Slots}: selecting a product for a slot that already has
+ * one replaces it. The selection is written into the machine with {@link #commitTo(Slots, VendingMachine)}.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class SlotSelectionModel {
+    private final int numSlots;
+    private final int numItemsPerSlot;
+    private final BitSet selectedSlots;
+    private final Product[] slotProducts;  // Product selected for each slot, null when the slot is not selected
+    private final int[] presetIndices;     // Preset product each selection was made from, -1 if unknown
+    private final BitSet committedSlots = new BitSet();
+
+    /**
+     * Creates an empty selection for a vending machine.
+     *
+     * @param numSlots        The number of slots in the vending machine.
+     * @param numItemsPerSlot The number of items each slot is filled with.
+     */
+    public SlotSelectionModel(int numSlots, int numItemsPerSlot) {
+        this.numSlots = numSlots;
+        this.numItemsPerSlot = numItemsPerSlot;
+        selectedSlots = new BitSet(numSlots);
+        slotProducts = new Product[numSlots];
+        presetIndices = new int[numSlots];
+    }
+
+    /**
+     * Creates a selection holding the products already stored in the specified slots,
+     * for example slots restored from a {@link MachineSnapshot}.
+     *
+     * @param slots The slots of the vending machine.
+     * @return A selection matching the slots.
+     */
+    public static SlotSelectionModel of(Slots slots) {
+        SlotSelectionModel model = new SlotSelectionModel(slots.getNumSlots(), slots.getNumItemsPerSlot());
+        for (int i = 0; i < slots.getNumSlots(); i++) {
+            Product product = slots.getSlotProduct(i);
+            if (!product.isEmpty()) {
+                model.set(i, -1, product);
+                model.committedSlots.set(i);
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Selects a preset product for a slot. The slot gets its own copy of the product, with the slot's
+     * selection number and a full slot of stock.
+     *
+     * @param slotIndex   The index of the slot.
+     * @param presetIndex The index of the preset product, reported back by {@link #getPresetIndex(int)}.
+     * @param preset      The preset product to copy.
+     */
+    public void select(int slotIndex, int presetIndex, Product preset) {
+        checkSlot(slotIndex);
+        set(slotIndex, presetIndex, new Product(slotIndex + 1, numItemsPerSlot, preset.getPrice(),
+                preset.getCalories(), preset.isSoldIndividually(), preset.getName()));
+    }
+
+    /**
+     * Clears the selection of a slot.
+     *
+     * @param slotIndex The index of the slot.
+     */
+    public void deselect(int slotIndex) {
+        checkSlot(slotIndex);
+        selectedSlots.clear(slotIndex);
+        slotProducts[slotIndex] = null;
+        presetIndices[slotIndex] = -1;
+    }
+
+    /**
+     * Clears the selection of every slot, visiting only the selected ones.
+     */
+    public void deselectAll() {
+        for (int i = selectedSlots.nextSetBit(0); i >= 0; i = selectedSlots.nextSetBit(i + 1)) {
+            slotProducts[i] = null;
+            presetIndices[i] = -1;
+        }
+        selectedSlots.clear();
+    }
+
+    /**
+     * @param slotIndex The index of the slot.
+     * @return true if a product is selected for the slot
+     */
+    public boolean isSelected(int slotIndex) {
+        return selectedSlots.get(slotIndex);
+    }
+
+    /**
+     * @param slotIndex The index of the slot.
+     * @return the index of the preset product selected for the slot, or -1 if none or unknown
+     */
+    public int getPresetIndex(int slotIndex) {
+        return selectedSlots.get(slotIndex) ? presetIndices[slotIndex] : -1;
+    }
+
+    /**
+     * @param slotIndex The index of the slot.
+     * @return the product selected for the slot, or null if none
+     */
+    public Product getProduct(int slotIndex) {
+        return slotProducts[slotIndex];
+    }
+
+    /**
+     * @return the number of selected slots
+     */
+    public int getSelectedCount() {
+        return selectedSlots.cardinality();
+    }
+
+    /**
+     * @return the number of slots in the vending machine
+     */
+    public int getNumSlots() {
+        return numSlots;
+    }
+
+    /**
+     * Gets the selected products in slot order.
+     *
+     * @return A new list holding the product of every selected slot.
+     */
+    public List<Product> getSelectedProducts() {
+        List<Product> products = new ArrayList<>(selectedSlots.cardinality());
+        for (int i = selectedSlots.nextSetBit(0); i >= 0; i = selectedSlots.nextSetBit(i + 1)) {
+            products.add(slotProducts[i]);
+        }
+        return products;
+    }
+
+    /**
+     * Writes the selection into a vending machine: every selected slot is filled with its product and added
+     * to the machine, and slots emptied since the last commit are emptied. Only selected and previously
+     * committed slots are visited.
+     *
+     * @param slots          The slots to fill.
+     * @param vendingMachine The vending machine the products are added to, or null for none.
+     */
+    public void commitTo(Slots slots, VendingMachine vendingMachine) {
+        BitSet emptied = (BitSet) committedSlots.clone();
+        emptied.andNot(selectedSlots);
+        for (int i = emptied.nextSetBit(0); i >= 0; i = emptied.nextSetBit(i + 1)) {
+            slots.fillSlot(i, Product.EMPTY, 0);
+        }
+        for (int i = selectedSlots.nextSetBit(0); i >= 0; i = selectedSlots.nextSetBit(i + 1)) {
+            slots.fillSlot(i, slotProducts[i], numItemsPerSlot);
+            if (vendingMachine != null) {
+                vendingMachine.addProduct(slotProducts[i]);
+            }
+        }
+        committedSlots.clear();
+        committedSlots.or(selectedSlots);
+    }
+
+    private void set(int slotIndex, int presetIndex, Product product) {
+        selectedSlots.set(slotIndex);
+        slotProducts[slotIndex] = product;
+        presetIndices[slotIndex] = presetIndex;
+    }
+
+    private void checkSlot(int slotIndex) {
+        if (slotIndex < 0 || slotIndex >= numSlots) {
+            throw new IndexOutOfBoundsException("Slot " + slotIndex + " is not in a machine with " + numSlots + " slots.");
+        }
+    }
+}
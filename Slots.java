@@ -1,4 +1,5 @@
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -6,11 +7,21 @@ import java.util.List;
  * Each slot can hold multiple products, and the class provides methods to manage
  * the products stored in the slots.
  * 
+ * <p>
+ * A slot holds a single kind of product, so only one product reference and the number of filled
+ * items are stored per slot; the items of a slot are filled from the front. The item level methods
+ * {@link #getProduct(int, int)}, {@link #setProduct(int, int, Product)} and {@link #getAllProducts()}
+ * are views over that compact model, where every item past the fill count is {@link Product#EMPTY}.
+ * </p>
+ * 
  * @author Ceriola, Antonio
  * 
  */
 public class Slots {
-     private List<List<Product>> products; 
+    private Product[] slotProducts;     // Product stored in each slot, EMPTY when the slot has no items
+    private int[] itemCounts;           // Number of filled items in each slot
+    private volatile ProductIndex productIndex; // Slot products by selection number, rebuilt after the slots change
+    private volatile int modifications; // Bumped after every change of a slot's product; slots are only changed by one thread
     private int numSlots;           // Number of slots
     private int numItemsPerSlot;    // Number of items per slot
 
@@ -22,14 +33,11 @@ public class Slots {
      * @param numItemsPerSlot The number of items each slot can hold.
      */
     public Slots(int numSlots, int numItemsPerSlot) {
-                products = new ArrayList<>();
-        for (int i = 0; i < numSlots; i++) {
-            List<Product> slotProducts = new ArrayList<>();
-            for (int j = 0; j < numItemsPerSlot; j++) {
-                slotProducts.add(Product.EMPTY); // Initialize with empty products
-            }
-            products.add(slotProducts);
-    }
+        this.numSlots = numSlots;
+        this.numItemsPerSlot = numItemsPerSlot;
+        slotProducts = new Product[numSlots];
+        Arrays.fill(slotProducts, Product.EMPTY); // Initialize with empty products
+        itemCounts = new int[numSlots];
     }
 
      /**
@@ -40,59 +48,107 @@ public class Slots {
      * @return The product stored in the specified slot and item index, or null if the indices are invalid.
      */
     public Product getProduct(int slotIndex, int itemIndex) {
-        if (slotIndex >= 0 && slotIndex < products.size()) {
-            List<Product> slotProducts = products.get(slotIndex);
-            if (itemIndex >= 0 && itemIndex < slotProducts.size()) {
-                return slotProducts.get(itemIndex);
-            }
+        if (!isValid(slotIndex, itemIndex)) {
+            return null; // Return null for invalid indices
         }
-        return null; // Return null for invalid indices
+        return itemIndex < itemCounts[slotIndex] ? slotProducts[slotIndex] : Product.EMPTY;
     }
 
      /**
      * Sets the product in the specified slot and item index.
+     * Setting a product makes it the product of the whole slot and fills the slot up to that item.
+     * Setting {@link Product#EMPTY} empties the slot from that item onwards.
      *
      * @param slotIndex The index of the slot.
      * @param itemIndex The index of the item within the slot.
      * @param product   The product to be set in the specified slot and item index.
      */
     public void setProduct(int slotIndex, int itemIndex, Product product) {
-        if (slotIndex >= 0 && slotIndex < products.size()) {
-            List<Product> slotProducts = products.get(slotIndex);
-            if (itemIndex >= 0 && itemIndex < slotProducts.size()) {
-                slotProducts.set(itemIndex, product);
-            }
+        if (!isValid(slotIndex, itemIndex)) {
+            return;
+        }
+        if (product.isEmpty()) {
+            setItemCount(slotIndex, Math.min(itemCounts[slotIndex], itemIndex));
+        } else {
+            setSlotProduct(slotIndex, product);
+            itemCounts[slotIndex] = Math.max(itemCounts[slotIndex], itemIndex + 1);
+        }
+    }
+
+    /**
+     * Fills a slot with the specified number of items of a product.
+     *
+     * @param slotIndex The index of the slot.
+     * @param product   The product to store in the slot.
+     * @param itemCount The number of items to store, at most the number of items per slot.
+     */
+    public void fillSlot(int slotIndex, Product product, int itemCount) {
+        if (!isValid(slotIndex, 0)) {
+            return;
         }
+        setSlotProduct(slotIndex, product);
+        setItemCount(slotIndex, product.isEmpty() ? 0 : Math.max(0, Math.min(itemCount, numItemsPerSlot)));
+    }
+
+    /**
+     * Gets the product stored in the specified slot.
+     *
+     * @param slotIndex The index of the slot.
+     * @return The product stored in the slot, EMPTY if the slot has no items, or null if the index is invalid.
+     */
+    public Product getSlotProduct(int slotIndex) {
+        return isValid(slotIndex, 0) ? slotProducts[slotIndex] : null;
+    }
+
+    /**
+     * Gets the number of filled items in the specified slot.
+     *
+     * @param slotIndex The index of the slot.
+     * @return The number of filled items, or 0 if the index is invalid.
+     */
+    public int getItemCount(int slotIndex) {
+        return isValid(slotIndex, 0) ? itemCounts[slotIndex] : 0;
     }
 
     /**
      * Retrieves all the products stored in the vending machine's slots as a single list.
+     * The list is a read-only view with one entry per item; it does not copy the slots.
      *
      * @return A list containing all the products stored in the slots.
      */
     public List<Product> getAllProducts() {
-        List<Product> allProducts = new ArrayList<>();
-        for (List<Product> slotProducts : products) {
-            allProducts.addAll(slotProducts);
-        }
-        return allProducts;
+        return new AbstractList<Product>() {
+            @Override
+            public Product get(int index) {
+                if (index < 0 || index >= size()) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+                }
+                return getProduct(index / numItemsPerSlot, index % numItemsPerSlot);
+            }
+
+            @Override
+            public int size() {
+                return numSlots * numItemsPerSlot;
+            }
+        };
     }
 
     /**
      * Gets the product stored in the vending machine based on its selection number.
+     * Safe to call from any thread: the index is rebuilt from the slots if they changed since it was built
+     * and published whole, so a purchase never sees a half built index.
      *
      * @param selectionNumber The selection number of the product to retrieve.
      * @return The product with the specified selection number, or null if not found.
      */
     public Product getProductBySelectionNumber(int selectionNumber) {
-    for (List<Product> slotProducts : products) {
-        for (Product product : slotProducts) {
-            if (product.getSelectionNumber() == selectionNumber) {
-                return product;
-            }
+        ProductIndex index = productIndex;
+        int modification = modifications;
+        if (index == null || index.getStamp() != modification || !index.isCurrent()) {
+            index = new ProductIndex(Arrays.asList(slotProducts), modification);
+            productIndex = index;
         }
-    }
-    return null; // Product not found
+        return index.get(selectionNumber); // Product not found yields null
     }
     
     /**
@@ -112,4 +168,41 @@ public class Slots {
     public int getNumItemsPerSlot() {
         return numItemsPerSlot;
     }
+
+    /**
+     * Checks whether the slot and item indices are within the vending machine.
+     *
+     * @param slotIndex The index of the slot.
+     * @param itemIndex The index of the item within the slot.
+     * @return true if both indices are valid.
+     */
+    private boolean isValid(int slotIndex, int itemIndex) {
+        return slotIndex >= 0 && slotIndex < numSlots && itemIndex >= 0 && itemIndex < numItemsPerSlot;
+    }
+
+    /**
+     * Replaces the product of a slot and keeps the selection number index up to date.
+     *
+     * @param slotIndex The index of the slot.
+     * @param product   The new product of the slot.
+     */
+    private void setSlotProduct(int slotIndex, Product product) {
+        if (slotProducts[slotIndex] != product) {
+            slotProducts[slotIndex] = product;
+            modifications++;
+        }
+    }
+
+    /**
+     * Changes the number of filled items of a slot, releasing the product when the slot becomes empty.
+     *
+     * @param slotIndex The index of the slot.
+     * @param itemCount The new number of filled items.
+     */
+    private void setItemCount(int slotIndex, int itemCount) {
+        itemCounts[slotIndex] = itemCount;
+        if (itemCount == 0) {
+            setSlotProduct(slotIndex, Product.EMPTY);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,59 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The StockLocks class holds the striped locks guarding the stock of the products.
+ * Every stock writer takes the stripe of its product: single product sales, restocks and rollbacks take one
+ * stripe for a few instructions, and {@link ProductSet} reservations take the stripes of all their components,
+ * so a reservation can check every component and then take them all without anyone changing the stock in
+ * between. Every product maps to one stripe, so unrelated products rarely contend and no machine-wide lock
+ * is needed. Code that locks several products must take their stripes in ascending stripe order, which rules
+ * out deadlocks between concurrent buyers. Stock is read without locking.
+ * Single product sales take the stripe too instead of a compare-and-set on the stock: a compare-and-set would not
+ * see a reservation holding the stripe, and could take an item between the reservation's check and its update.
+ *
+ * @author Ceriola, Antonio
+ */
+public class StockLocks {
+    private static final int STRIPES = 64; // Must be a power of two
+    private static final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    private StockLocks() {
+    }
+
+    /**
+     * Gets the stripe guarding the stock of the specified product.
+     *
+     * @param product The product.
+     * @return The index of the product's stripe.
+     */
+    public static int stripeOf(Product product) {
+        int hash = System.identityHashCode(product);
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Gets the lock guarding the stock of the specified product.
+     *
+     * @param product The product.
+     * @return The lock of the product's stripe.
+     */
+    public static ReentrantLock lockFor(Product product) {
+        return locks[stripeOf(product)];
+    }
+
+    /**
+     * Gets the lock of the specified stripe.
+     *
+     * @param stripe The index of the stripe.
+     * @return The lock of the stripe.
+     */
+    public static ReentrantLock lockForStripe(int stripe) {
+        return locks[stripe];
+    }
+}
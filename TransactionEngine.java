@@ -0,0 +1,257 @@
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * The TransactionEngine class processes purchases without any user interface. It resolves the requested
+ * product, takes it out of stock, accepts the customer's bills and pays out change from the machine's
+ * {@link CashVault}, and returns the outcome as a {@link TransactionResult}.
+ *
+ * <p>
+ * {@link #process(VendingMachineRequest)} runs a purchase on the calling thread. {@link #submit(VendingMachineRequest)}
+ * runs it on the engine's executor: one virtual thread per purchase when the JDK supports them, or a bounded
+ * pool that makes callers run purchases themselves when its queue is full. Stock is updated under the
+ * product's {@link StockLocks} stripe, held for a few instructions, and cash with a compare-and-set on the
+ * {@link CashVault}, so any number of purchases can run against the same machine at once.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class TransactionEngine implements AutoCloseable {
+    // Idle change engines. A purchase borrows one and gives it back, so engines and their tables are reused even
+    // when every purchase runs on a new virtual thread, and there are never more engines than concurrent purchases.
+    private static final ConcurrentLinkedDeque<ChangeEngine> changeEngines = new ConcurrentLinkedDeque<>();
+
+    private final IntFunction<Product> products;
+    private final CashVault cashVault;
+    private ExecutorService executor;
+    private final boolean ownsExecutor;
+    private volatile TransactionListener[] listeners = new TransactionListener[0];
+
+    /**
+     * Creates an engine for the products of the specified slots, running submitted purchases on virtual threads.
+     *
+     * @param slots     The slots holding the products of the vending machine.
+     * @param cashVault The vault holding the bills of the vending machine.
+     */
+    public TransactionEngine(Slots slots, CashVault cashVault) {
+        this(slots::getProductBySelectionNumber, cashVault);
+    }
+
+    /**
+     * Creates an engine running submitted purchases on virtual threads.
+     *
+     * @param products  Finds the product for a selection number, returning null if there is none.
+     * @param cashVault The vault holding the bills of the vending machine.
+     */
+    public TransactionEngine(IntFunction<Product> products, CashVault cashVault) {
+        this.products = products;
+        this.cashVault = cashVault;
+        this.ownsExecutor = true; // Created on the first submit, so purely synchronous engines never start threads
+    }
+
+    /**
+     * Creates an engine running submitted purchases on the specified executor.
+     *
+     * @param products  Finds the product for a selection number, returning null if there is none.
+     * @param cashVault The vault holding the bills of the vending machine.
+     * @param executor  The executor running submitted purchases; it is not shut down by {@link #close()}.
+     */
+    public TransactionEngine(IntFunction<Product> products, CashVault cashVault, ExecutorService executor) {
+        this.products = products;
+        this.cashVault = cashVault;
+        this.executor = executor;
+        this.ownsExecutor = false;
+    }
+
+    /**
+     * Creates an executor that runs every task on its own virtual thread.
+     * Falls back to {@link #newBoundedExecutor(int, int)} with one thread per processor on JDKs without virtual threads.
+     *
+     * @return A new executor.
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return newBoundedExecutor(Runtime.getRuntime().availableProcessors(), 4096);
+        }
+    }
+
+    /**
+     * Creates a fixed size executor with a bounded queue. When the queue is full the submitting thread runs
+     * the purchase itself, which slows producers down instead of buffering without limit.
+     *
+     * @param threads       The number of worker threads.
+     * @param queueCapacity The number of purchases that may wait for a worker.
+     * @return A new executor.
+     */
+    public static ExecutorService newBoundedExecutor(int threads, int queueCapacity) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Registers a listener that is told about every processed purchase.
+     *
+     * @param listener The listener to add.
+     */
+    public synchronized void addTransactionListener(TransactionListener listener) {
+        TransactionListener[] grown = Arrays.copyOf(listeners, listeners.length + 1);
+        grown[grown.length - 1] = listener;
+        listeners = grown;
+    }
+
+    /**
+     * Processes a purchase asynchronously on the engine's executor.
+     *
+     * @param request The purchase request.
+     * @return A future completed with the outcome of the purchase.
+     */
+    public CompletableFuture<TransactionResult> submit(VendingMachineRequest request) {
+        return CompletableFuture.supplyAsync(() -> process(request), executor());
+    }
+
+    /**
+     * Processes a purchase on the calling thread.
+     * The product, or every product of a set, is taken out of stock first and put back if the vault cannot pay the change,
+     * so a failed purchase leaves both the stock and the vault unchanged.
+     * Listeners are notified afterwards; one that throws is reported and skipped, and does not change the result.
+     *
+     * @param request The purchase request.
+     * @return The outcome of the purchase.
+     */
+    public TransactionResult process(VendingMachineRequest request) {
+        long start = MachineMetrics.startTimer();
+        TransactionEvent event = new TransactionEvent();
+        event.begin();
+        TransactionResult result = sell(request);
+        event.end();
+        if (event.shouldCommit()) {
+            event.selectionNumber = result.getSelectionNumber();
+            event.amount = result.getPrice();
+            event.setBills(result.getChange());
+            event.outcome = (result.getProductSet() != null ? "SET " : "") + result.getStatus().name();
+            event.commit();
+        }
+        if (result.getProductSet() != null) {
+            MachineMetrics.recordSetTransaction(start, result.getSelectionNumber(), result.getStatus());
+        } else {
+            MachineMetrics.recordTransaction(start, result.getSelectionNumber(), result.getStatus());
+        }
+        TransactionListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            try {
+                current[i].transactionCompleted(request, result);
+            } catch (RuntimeException e) {
+                // The purchase is already done: a failing listener, such as a journal that cannot write, must not make it look failed
+                System.err.println("A transaction listener failed: " + e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Performs the purchase without recording it: no JFR event, no transaction metrics and no listeners.
+     * The {@link FleetSimulator} uses it to sell simulated purchases with exactly the rules of the real machines.
+     * A product set is bought as a whole: it is priced with {@link ProductSet#getTotalPrice()} and its main product
+     * and included products are taken out of stock together with {@link ProductSet#tryReduceStock()}.
+     *
+     * @param request The purchase request.
+     * @return The outcome of the purchase.
+     */
+    TransactionResult sell(VendingMachineRequest request) {
+        int selectionNumber = request.getSelectionNumber();
+        ProductSet productSet = request.getProductSet();
+        Product product = productSet != null ? productSet.getMainProduct() : products.apply(selectionNumber);
+        if (product == null || product.isEmpty()) {
+            return new TransactionResult(selectionNumber, null, productSet, 0, TransactionStatus.INVALID_PRODUCT, null, 0);
+        }
+        // Read once: the whole purchase uses the same price even if it is repriced meanwhile
+        int price = productSet != null ? productSet.getTotalPrice() : product.getPrice();
+        if (!product.isSoldIndividually()) {
+            return failure(selectionNumber, product, productSet, price, TransactionStatus.NOT_SOLD_INDIVIDUALLY);
+        }
+        CashBundle enteredCash = request.getCash();
+        int changeAmount = enteredCash.getTotal() - price;
+        if (changeAmount < 0) {
+            return failure(selectionNumber, product, productSet, price, TransactionStatus.INSUFFICIENT_CASH);
+        }
+        boolean taken = productSet != null ? productSet.tryReduceStock() == null : product.tryDecrement(1);
+        if (!taken) {
+            return failure(selectionNumber, product, productSet, price, TransactionStatus.OUT_OF_STOCK);
+        }
+        int[] change = new int[Cash.values().length];
+        ChangeEngine changeEngine = changeEngines.pollFirst();
+        if (changeEngine == null) {
+            changeEngine = new ChangeEngine();
+        }
+        boolean paid;
+        try {
+            paid = cashVault.exchange(enteredCash.toArray(), changeAmount, changeEngine, change);
+        } finally {
+            changeEngines.offerFirst(changeEngine); // Most recently used first: its tables are the most likely to be reusable
+        }
+        if (!paid) {
+            if (productSet != null) {
+                productSet.releaseStock();
+            } else {
+                product.addStock(1);
+            }
+            return failure(selectionNumber, product, productSet, price, TransactionStatus.EXACT_CHANGE_ONLY);
+        }
+        return new TransactionResult(selectionNumber, product, productSet, price, TransactionStatus.SUCCESS, new CashBundle(change), product.getStock());
+    }
+
+    /**
+     * Builds the result of a failed purchase.
+     *
+     * @param selectionNumber The selection number that was requested.
+     * @param product         The product that was resolved.
+     * @param productSet      The product set that was requested, or null for a single product.
+     * @param price           The price the purchase was attempted at.
+     * @param status          The reason the purchase failed.
+     * @return The result of the failed purchase.
+     */
+    private static TransactionResult failure(int selectionNumber, Product product, ProductSet productSet, int price, TransactionStatus status) {
+        return new TransactionResult(selectionNumber, product, productSet, price, status, null, product.getStock());
+    }
+
+    /**
+     * Gets the executor running submitted purchases, creating the virtual thread executor on first use.
+     *
+     * @return The executor.
+     */
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = newVirtualThreadExecutor();
+        }
+        return executor;
+    }
+
+    /**
+     * Gets the vault the engine pays change from.
+     *
+     * @return The CashVault of the vending machine.
+     */
+    public CashVault getCashVault() {
+        return cashVault;
+    }
+
+    /**
+     * Stops accepting submitted purchases and shuts down the executor if the engine created it.
+     * Purchases already submitted still complete.
+     */
+    @Override
+    public synchronized void close() {
+        if (ownsExecutor && executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The TransactionEvent class records one purchase processed by the {@link TransactionEngine}:
+ * the price of the product, the change paid out per denomination and the {@link TransactionStatus}.
+ *
+ * @author Ceriola, Antonio
+ */
+@Name("vendingmachine.Transaction")
+@Label("Transaction")
+@Description("Purchase processed by the transaction engine")
+public class TransactionEvent extends VendingMachineEvent {
+}
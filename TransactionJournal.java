@@ -0,0 +1,342 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The TransactionJournal class is a durable, append-only log of every sale and every maintenance operation,
+ * used to reconcile the machine's stock and cash after a crash.
+ *
+ * <p>
+ * Records have a fixed size of {@value #RECORD_SIZE} bytes and are appended to an in-memory buffer in a short
+ * critical section. A single writer thread swaps the buffer, writes it through a {@link FileChannel} and forces
+ * it to disk. Everything appended while one force is running goes out with the next one, so a single fsync
+ * covers many transactions (group commit). Appending never waits for the disk unless the buffer is full;
+ * callers that need durability wait for their sequence number with {@link #awaitDurable(long)}.
+ * </p>
+ *
+ * <p>
+ * File layout: a header of {@value #HEADER_SIZE} bytes (magic, version, record size) followed by the records:
+ * type (1 byte), status (1), reserved (2), selection number (4), amount (4), timestamp in milliseconds (8),
+ * the bills entered per denomination (5 x 4), the bills paid out per denomination (5 x 4) and padding.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public class TransactionJournal implements TransactionListener, AutoCloseable {
+    public static final int RECORD_SIZE = 64;
+    public static final int HEADER_SIZE = 16;
+    private static final int MAX_WINDOW_RECORDS = Integer.MAX_VALUE / RECORD_SIZE; // A mapping holds at most Integer.MAX_VALUE bytes
+    private static final int MAGIC = 0x564D4A4C; // "VMJL"
+    private static final int VERSION = 1;
+    private static final int DENOMINATIONS = Cash.values().length;
+
+    /**
+     * The Visitor interface receives the records of a journal during {@link TransactionJournal#replay(Path, Visitor)}.
+     */
+    public interface Visitor {
+
+        /**
+         * Called once per record, in the order the records were appended.
+         *
+         * @param type            The kind of record.
+         * @param status          The ordinal of the {@link TransactionStatus} for transactions, 0 otherwise.
+         * @param selectionNumber The selection number of the product, or -1 for cash operations.
+         * @param amount          The price, stock or cash amount the record is about.
+         * @param timestamp       The time the record was appended, in milliseconds since the epoch.
+         * @param entered         The bills entered or added per denomination; only valid during the call.
+         * @param paidOut         The bills paid out or removed per denomination; only valid during the call.
+         */
+        void record(JournalRecordType type, int status, int selectionNumber, int amount, long timestamp, int[] entered, int[] paidOut);
+    }
+
+    private final FileChannel channel;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dataAvailable = lock.newCondition();
+    private final Condition spaceAvailable = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+    private final Thread writer;
+    private ByteBuffer active;      // Buffer records are appended to
+    private ByteBuffer spare;       // Buffer returned by the writer after it was written, null while being written
+    private long appendedSequence;  // Sequence number of the last appended record
+    private long durableSequence;   // Sequence number of the last record forced to disk
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * Opens a journal, creating the file with its header if it does not exist and appending to it otherwise.
+     *
+     * @param file       The journal file.
+     * @param bufferSize The size in bytes of each of the two append buffers.
+     * @throws IOException if the file cannot be opened or is not a journal.
+     */
+    public TransactionJournal(Path file, int bufferSize) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0).flip();
+            channel.write(header, 0);
+            channel.force(true);
+        } else {
+            checkHeader(channel);
+        }
+        long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        channel.position(HEADER_SIZE + records * RECORD_SIZE); // Drops a record torn by a crash
+        int capacity = Math.max(bufferSize / RECORD_SIZE, 1) * RECORD_SIZE;
+        active = ByteBuffer.allocateDirect(capacity);
+        spare = ByteBuffer.allocateDirect(capacity);
+        writer = new Thread(this::writeLoop, "transaction-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Opens a journal with 64 KB append buffers.
+     *
+     * @param file The journal file.
+     * @throws IOException if the file cannot be opened or is not a journal.
+     */
+    public TransactionJournal(Path file) throws IOException {
+        this(file, 64 * 1024);
+    }
+
+    /**
+     * Appends a record. Returns as soon as the record is buffered; use {@link #awaitDurable(long)} to wait for the disk.
+     *
+     * @param type            The kind of record.
+     * @param status          The ordinal of the {@link TransactionStatus} for transactions, 0 otherwise.
+     * @param selectionNumber The selection number of the product, or -1 for cash operations.
+     * @param amount          The price, stock or cash amount the record is about.
+     * @param entered         The bills entered or added per denomination, or null for none.
+     * @param paidOut         The bills paid out or removed per denomination, or null for none.
+     * @return The sequence number of the record.
+     */
+    public long append(JournalRecordType type, int status, int selectionNumber, int amount, int[] entered, int[] paidOut) {
+        long timestamp = System.currentTimeMillis();
+        lock.lock();
+        try {
+            while (!closed && failure == null && active.remaining() < RECORD_SIZE) {
+                spaceAvailable.awaitUninterruptibly();
+            }
+            checkOpen();
+            active.put((byte) type.ordinal()).put((byte) status).putShort((short) 0);
+            active.putInt(selectionNumber).putInt(amount).putLong(timestamp);
+            putCounts(active, entered);
+            putCounts(active, paidOut);
+            active.position(active.position() + RECORD_SIZE - 20 - 8 * DENOMINATIONS);
+            appendedSequence++;
+            dataAvailable.signal();
+            return appendedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the record with the specified sequence number has been forced to disk.
+     *
+     * @param sequence The sequence number returned by {@link #append}.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void awaitDurable(long sequence) throws InterruptedException {
+        lock.lock();
+        try {
+            while (durableSequence < sequence && failure == null) {
+                durable.await();
+            }
+            if (failure != null) {
+                throw new UncheckedIOException(failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the sequence number of the last record known to be on disk
+     */
+    public long getDurableSequence() {
+        lock.lock();
+        try {
+            return durableSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Journals a purchase processed by a {@link TransactionEngine}. Purchases of product sets get their own record types,
+     * since the selection number of a set's main product may also be the selection number of a single product.
+     */
+    @Override
+    public void transactionCompleted(VendingMachineRequest request, TransactionResult result) {
+        int price = result.getPrice();
+        CashBundle change = result.getChange();
+        JournalRecordType type;
+        if (result.getProductSet() != null) {
+            type = result.isSuccess() ? JournalRecordType.SET_SALE : JournalRecordType.SET_TRANSACTION_FAILED;
+        } else {
+            type = result.isSuccess() ? JournalRecordType.SALE : JournalRecordType.TRANSACTION_FAILED;
+        }
+        append(type, result.getStatus().ordinal(),
+                request.getSelectionNumber(), price, request.getCash().toArray(), change != null ? change.toArray() : null);
+    }
+
+    /**
+     * Writes every buffered record, forces it to disk and closes the file.
+     *
+     * @throws IOException if the last records could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            dataAvailable.signalAll();
+            spaceAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Reads every complete record of a journal in order. A record torn by a crash at the end of the file is skipped.
+     * The file is memory-mapped window by window, each window at most {@value #MAX_WINDOW_RECORDS} records long,
+     * so replay does not copy it and journals larger than a single mapping can hold are read too.
+     *
+     * @param file    The journal file.
+     * @param visitor Receives the records.
+     * @throws IOException if the file cannot be read or is not a journal.
+     */
+    public static void replay(Path file, Visitor visitor) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            checkHeader(in);
+            long records = (in.size() - HEADER_SIZE) / RECORD_SIZE;
+            int[] entered = new int[DENOMINATIONS];
+            int[] paidOut = new int[DENOMINATIONS];
+            for (long first = 0; first < records; first += MAX_WINDOW_RECORDS) {
+                long count = Math.min(MAX_WINDOW_RECORDS, records - first);
+                ByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE, count * RECORD_SIZE);
+                for (long i = 0; i < count; i++) {
+                    int start = data.position();
+                    JournalRecordType type = JournalRecordType.fromOrdinal(data.get());
+                    int status = data.get();
+                    data.getShort();
+                    int selectionNumber = data.getInt();
+                    int amount = data.getInt();
+                    long timestamp = data.getLong();
+                    for (int d = 0; d < DENOMINATIONS; d++) {
+                        entered[d] = data.getInt();
+                    }
+                    for (int d = 0; d < DENOMINATIONS; d++) {
+                        paidOut[d] = data.getInt();
+                    }
+                    data.position(start + RECORD_SIZE);
+                    if (type != null) {
+                        visitor.record(type, status, selectionNumber, amount, timestamp, entered, paidOut);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs on the writer thread: swaps the append buffer, writes it and forces it to disk until the journal is closed.
+     */
+    private void writeLoop() {
+        while (true) {
+            ByteBuffer toWrite;
+            long upTo;
+            lock.lock();
+            try {
+                while (active.position() == 0 && !closed) {
+                    dataAvailable.awaitUninterruptibly();
+                }
+                if (active.position() == 0) {
+                    return; // Closed and fully written
+                }
+                toWrite = active;
+                active = spare;
+                spare = null;
+                upTo = appendedSequence;
+                spaceAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            IOException error = null;
+            try {
+                toWrite.flip();
+                while (toWrite.hasRemaining()) {
+                    channel.write(toWrite);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+            toWrite.clear();
+            lock.lock();
+            try {
+                spare = toWrite;
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableSequence = upTo;
+                }
+                durable.signalAll();
+                spaceAvailable.signalAll();
+                if (error != null) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Fails an append when the journal can no longer write.
+     */
+    private void checkOpen() {
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("The transaction journal is closed.");
+        }
+    }
+
+    /**
+     * Writes one count per denomination, or zeros when there are none.
+     */
+    private static void putCounts(ByteBuffer buffer, int[] counts) {
+        for (int d = 0; d < DENOMINATIONS; d++) {
+            buffer.putInt(counts != null ? counts[d] : 0);
+        }
+    }
+
+    /**
+     * Verifies that a file starts with a journal header of a supported version.
+     */
+    private static void checkHeader(FileChannel in) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (in.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a transaction journal.");
+        }
+        if (header.getInt(4) != VERSION || header.getInt(8) != RECORD_SIZE) {
+            throw new IOException("Unsupported transaction journal version " + header.getInt(4) + ".");
+        }
+    }
+}
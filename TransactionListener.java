@@ -0,0 +1,21 @@
+/**
+ * The TransactionListener interface is implemented by classes that want to be told about every purchase
+ * processed by a {@link TransactionEngine}, such as journals, metrics and forecasts.
+ *
+ * <p>
+ * Listeners are called on the thread that processed the purchase, after the stock and the vault were updated,
+ * so they must be fast and thread safe.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+public interface TransactionListener {
+
+    /**
+     * Called after a purchase was processed, whether it succeeded or not.
+     *
+     * @param request The purchase request.
+     * @param result  The outcome of the purchase.
+     */
+    void transactionCompleted(VendingMachineRequest request, TransactionResult result);
+}
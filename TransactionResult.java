@@ -0,0 +1,122 @@
+/**
+ * The TransactionResult class holds the outcome of a purchase processed by the {@link TransactionEngine}:
+ * whether it succeeded, the price it was made at, the change that was paid out and the stock left afterwards.
+ * The purchase of a product set reports the selection number of the set's main product, which may be shared with a
+ * single product, so consumers keyed by selection number must tell the two apart with {@link #getProductSet()}.
+ *
+ * @author Ceriola, Antonio
+ */
+public class TransactionResult {
+    private final int selectionNumber;
+    private final Product product;
+    private final ProductSet productSet;
+    private final int price;
+    private final TransactionStatus status;
+    private final CashBundle change;
+    private final int remainingStock;
+
+    /**
+     * Creates a new TransactionResult.
+     *
+     * @param selectionNumber The selection number that was requested.
+     * @param product         The product that was resolved for the selection number, or null if there was none.
+     * @param status          The outcome of the purchase.
+     * @param change          The change paid out, or null if the purchase failed.
+     * @param remainingStock  The stock of the product after the purchase, or 0 if there was no product.
+     */
+    public TransactionResult(int selectionNumber, Product product, TransactionStatus status, CashBundle change, int remainingStock) {
+        this(selectionNumber, product, product != null ? product.getPrice() : 0, status, change, remainingStock);
+    }
+
+    /**
+     * Creates a new TransactionResult for a purchase made at the specified price.
+     *
+     * @param selectionNumber The selection number that was requested.
+     * @param product         The product that was resolved for the selection number, or null if there was none.
+     * @param price           The price the purchase was made at, read once so a concurrent repricing cannot change it.
+     * @param status          The outcome of the purchase.
+     * @param change          The change paid out, or null if the purchase failed.
+     * @param remainingStock  The stock of the product after the purchase, or 0 if there was no product.
+     */
+    public TransactionResult(int selectionNumber, Product product, int price, TransactionStatus status, CashBundle change, int remainingStock) {
+        this(selectionNumber, product, null, price, status, change, remainingStock);
+    }
+
+    /**
+     * Creates a new TransactionResult for a purchase made at the specified price, of a single product or of a product set.
+     *
+     * @param selectionNumber The selection number that was requested.
+     * @param product         The product that was resolved for the selection number, or the main product of the set.
+     * @param productSet      The product set that was bought, or null if a single product was bought.
+     * @param price           The price the purchase was made at, read once so a concurrent repricing cannot change it.
+     * @param status          The outcome of the purchase.
+     * @param change          The change paid out, or null if the purchase failed.
+     * @param remainingStock  The stock of the product after the purchase, or 0 if there was no product.
+     */
+    public TransactionResult(int selectionNumber, Product product, ProductSet productSet, int price, TransactionStatus status,
+            CashBundle change, int remainingStock) {
+        this.selectionNumber = selectionNumber;
+        this.product = product;
+        this.productSet = productSet;
+        this.price = price;
+        this.status = status;
+        this.change = change;
+        this.remainingStock = remainingStock;
+    }
+
+    /**
+     * @return the selection number that was requested
+     */
+    public int getSelectionNumber() {
+        return selectionNumber;
+    }
+
+    /**
+     * @return the product that was resolved for the selection number, or null if there was none
+     */
+    public Product getProduct() {
+        return product;
+    }
+
+    /**
+     * @return the product set that was bought, or null if a single product was bought
+     */
+    public ProductSet getProductSet() {
+        return productSet;
+    }
+
+    /**
+     * @return the price the purchase was made at, or 0 if there was no product
+     */
+    public int getPrice() {
+        return price;
+    }
+
+    /**
+     * @return the outcome of the purchase
+     */
+    public TransactionStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return true if the product was sold and the change paid out
+     */
+    public boolean isSuccess() {
+        return status == TransactionStatus.SUCCESS;
+    }
+
+    /**
+     * @return the change paid out, or null if the purchase failed
+     */
+    public CashBundle getChange() {
+        return change;
+    }
+
+    /**
+     * @return the stock of the product after the purchase
+     */
+    public int getRemainingStock() {
+        return remainingStock;
+    }
+}
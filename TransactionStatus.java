@@ -0,0 +1,32 @@
+/**
+ * The TransactionStatus enum lists the possible outcomes of a purchase processed by the {@link TransactionEngine}.
+ * Each outcome carries the message shown to the customer.
+ *
+ * @author Ceriola, Antonio
+ */
+public enum TransactionStatus {
+    SUCCESS("Thank you for your purchase."),
+    INVALID_PRODUCT("Invalid product selection. Please choose a different product."),
+    NOT_SOLD_INDIVIDUALLY("Invalid product selection. The selected product is not sold individually. Please choose a different product."),
+    INSUFFICIENT_CASH("Insufficient cash. Please enter at least the price of the product."),
+    OUT_OF_STOCK("The selected product is out of stock. Please choose a different product."),
+    EXACT_CHANGE_ONLY("Exact change only. The machine cannot return your change, please enter a different amount.");
+
+    private String message;
+
+    /**
+     * 
+     * @param message the message shown to the customer for this outcome
+     */
+    TransactionStatus(String message){
+        this.message = message;
+    }
+
+    /**
+     * 
+     * @return the message shown to the customer for this outcome
+     */
+    public String getMessage(){
+        return message;
+    }
+}
@@ -1,27 +1,76 @@
 /** 
- * The class VendingMachineController is that class used to control the vending machine operations
+ * The class VendingMachineController is that class used to control the vending machine operations.
+ * It only calculates change: it takes nothing out of stock or out of a vault, so its calculations are not
+ * sales and are not written to the transaction journal; completed purchases are journaled by the {@link TransactionEngine}.
  * 
  * @author Ceriola, Antonio
  */
 public class VendingMachineController {
     private Calculator calculator;
+    private CashBundle inventory;
 
     public VendingMachineController (){
     this.calculator = new Calculator();
+    }
+
+    /**
+     * Creates a controller that only returns change the machine can pay with its bills.
+     *
+     * @param inventory The bills currently held by the vending machine.
+     */
+    public VendingMachineController(CashBundle inventory) {
+        this();
+        this.inventory = inventory;
     }
         /**
          * Calculates the change to be returned based on the entered cash and the selected product.
+         * When the controller was created with an inventory, the change is paid from the bills in the machine,
+         * adding the bills just entered only when the machine's bills are not enough, and null is returned
+         * if the machine needs exact change.
          * 
          * @param request The VendingMachineRequest object containing the entered cash and selected product
-         * @return  The CashBundle object representing the calculated change.
+         * @return  The CashBundle object representing the calculated change, or null if exact change is required.
+         * @throws IllegalArgumentException if the entered cash does not cover the price of the product.
          */
         public CashBundle calculateChange(VendingMachineRequest request) {
+            long start = MachineMetrics.startTimer();
             int productPrice = request.getProduct().getPrice();
             int totalCashEntered = calculator.calculateTotal(request.getCash());
             int amountMoneyToReturn = totalCashEntered - productPrice;
-            return calculator.calculateChange(amountMoneyToReturn);
+            if (amountMoneyToReturn < 0) {
+                throw new IllegalArgumentException("Insufficient cash: " + totalCashEntered + " entered for a price of " + productPrice);
+            }
+            ChangeCalculationEvent event = new ChangeCalculationEvent();
+            event.begin();
+            CashBundle enteredCash = request.getCash();
+            CashBundle change;
+            if (inventory == null) {
+                change = calculator.calculateChange(amountMoneyToReturn);
+            } else {
+                change = calculator.calculateChange(amountMoneyToReturn, inventory);
+                if (change == null && ChangeEngine.hasBillUpTo(enteredCash.toArray(), amountMoneyToReturn)) {
+                    CashBundle available = new CashBundle(
+                            inventory.getNumber5() + enteredCash.getNumber5(),
+                            inventory.getNumber10() + enteredCash.getNumber10(),
+                            inventory.getNumber20() + enteredCash.getNumber20(),
+                            inventory.getNumber50() + enteredCash.getNumber50(),
+                            inventory.getNumber100() + enteredCash.getNumber100());
+                    change = calculator.calculateChange(amountMoneyToReturn, available);
+                }
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.selectionNumber = request.getSelectionNumber();
+                event.amount = productPrice;
+                event.setBills(change);
+                event.outcome = change != null ? "PAID" : "EXACT_CHANGE_ONLY";
+                event.commit();
+            }
+            MachineMetrics.recordChangeCalculation(start);
+            return change;
         }
 
+
 }
 
 
@@ -0,0 +1,67 @@
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+
+/**
+ * The VendingMachineEvent class is the base of the Java Flight Recorder events of the vending machine.
+ * Every event carries the selection number and amount it is about, the bills involved per denomination
+ * and its outcome, so slow operations can be lined up with garbage collection and lock contention in a
+ * recording. When no recording is running the events are not committed and cost next to nothing.
+ *
+ * @author Ceriola, Antonio
+ */
+@Category("Vending Machine")
+public abstract class VendingMachineEvent extends jdk.jfr.Event {
+    @Label("Selection Number")
+    int selectionNumber = -1;
+
+    @Label("Amount")
+    int amount;
+
+    @Label("Fives")
+    int fives;
+
+    @Label("Tens")
+    int tens;
+
+    @Label("Twenties")
+    int twenties;
+
+    @Label("Fifties")
+    int fifties;
+
+    @Label("Hundreds")
+    int hundreds;
+
+    @Label("Outcome")
+    String outcome;
+
+    /**
+     * Sets the bills involved in the operation.
+     *
+     * @param bills The number of bills per denomination, indexed by {@link Cash#ordinal()}, or null for none.
+     */
+    void setBills(int[] bills) {
+        if (bills != null) {
+            fives = bills[0];
+            tens = bills[1];
+            twenties = bills[2];
+            fifties = bills[3];
+            hundreds = bills[4];
+        }
+    }
+
+    /**
+     * Sets the bills involved in the operation.
+     *
+     * @param bills The bills, or null for none.
+     */
+    void setBills(CashBundle bills) {
+        if (bills != null) {
+            fives = bills.getNumber5();
+            tens = bills.getNumber10();
+            twenties = bills.getNumber20();
+            fifties = bills.getNumber50();
+            hundreds = bills.getNumber100();
+        }
+    }
+}
@@ -1,16 +1,19 @@
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
 
-import javafx.application.Platform;
-import javafx.geometry.Insets;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
-import javafx.scene.control.Label;
-import javafx.scene.control.TextField;
-import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
 
 
@@ -18,13 +21,13 @@ import javafx.scene.control.ListView;
  * The VendingMachineInterface class is responsible for displaying the user interface of the vending machine
  * and handling user interactions.
  * This class allows users to select products from the vending machine, enter cash, and receive change.
- * It interacts with the VendingMachine and VendingMachineController classes to perform these actions.
+ * It interacts with the VendingMachine and TransactionEngine classes to perform these actions.
  * The VendingMachineInterface class serves as an intermediary between the user and the backend functionality of the vending machine.
  * 
  * <p>
  * The VendingMachineInterface class relies on the following classes:
  * - {@link Slots}: Represents the slots of the vending machine.
- * - {@link VendingMachineController}: Manages the business logic and calculations for the vending machine.
+ * - {@link TransactionEngine}: Processes purchases, stock and change independently of the user interface.
  * - {@link Product}: Represents a product that can be placed in the vending machine.
  * - {@link ProductSet}: Represents a set of products that can be combined and placed in the vending machine.
  * - {@link Cash}: Utility class for parsing cash input from the user.
@@ -37,67 +40,86 @@ import javafx.scene.control.ListView;
 public class VendingMachineInterface {
     
     private Slots slots;
-    private VendingMachineController controller = new VendingMachineController();
+    private TransactionEngine transactionEngine;
     private int selectedProduct;
+    private ProductSet selectedProductSet;
     private CashBundle change;
     private List<Product> selectedProducts;
+    private volatile ProductIndex selectedProductIndex;
     private VendingMachine vendingMachine;
+    private final Queue<TransactionResult> completedPurchases = new ConcurrentLinkedQueue<>();
+    private final FxCoalescer purchaseResults = new FxCoalescer(this::showCompletedPurchases);
 
     public VendingMachineInterface(Slots slots, List<Product> selectedProducts) {
+        this(slots, selectedProducts, new CashVault(25, 25, 25, 25, 25)); // Starting float, so the first purchases can get change
+    }
+
+    /**
+     * Creates the customer interface of a vending machine whose purchases pay change out of the specified vault.
+     *
+     * @param slots            The slots of the vending machine.
+     * @param selectedProducts The products offered by the vending machine.
+     * @param cashVault        The vault holding the bills of the vending machine.
+     */
+    public VendingMachineInterface(Slots slots, List<Product> selectedProducts, CashVault cashVault) {
         this.slots = slots;
         this.selectedProducts = selectedProducts;
+        this.selectedProductIndex = new ProductIndex(selectedProducts);
         this.vendingMachine = new VendingMachine(selectedProducts);
+        this.transactionEngine = new TransactionEngine(this::getProductBySelectionNumber, cashVault);
+    }
+
+    /**
+     * Returns the engine processing the purchases of this interface, so that journals and other listeners can be attached.
+     *
+     * @return The transaction engine of this interface.
+     */
+    public TransactionEngine getTransactionEngine() {
+        return transactionEngine;
     }
 
     /**
      * Displays the available products in the vending machine to the user.
      * The user can select individual products or product sets.
+     * The list holds the products themselves and only formats the rows that are visible; rows are refreshed
+     * when the stock or price of their product, or of a product included in their set, changes.
      */
     public void displayProducts() {
         Stage stage = new Stage();
         VBox vbox = new VBox();
-        ListView<String> productListView = new ListView<>();
-    
-        for (Product product : selectedProducts) {
-            String productDetails = String.format("%s - Calories: %d - Price: %d",
-                    product.getName(), product.getCalories(), product.getPrice());
-            productListView.getItems().add(productDetails);
-        }
-    
-        for (ProductSet productSet : Product.productSets) { // <-- Corrected variable name here
-            String productSetDetails = getProductSetDetails(productSet);
-            productListView.getItems().add(productSetDetails);
+        ObservableList<Product> rows = FXCollections.observableArrayList(selectedProducts);
+        Map<Product, ProductSet> setsByMainProduct = new IdentityHashMap<>();
+        for (ProductSet productSet : Product.getCatalog().getProductSets()) {
+            setsByMainProduct.put(productSet.getMainProduct(), productSet);
+            rows.add(productSet.getMainProduct());
         }
+        ListView<Product> productListView = new ListView<>(rows);
+        productListView.setCellFactory(view -> new ProductCell(setsByMainProduct));
+
+        ProductRowUpdater updater = new ProductRowUpdater(rows, setsByMainProduct);
+        Product.addProductListener(updater);
+        stage.setOnHidden(e -> {
+            Product.removeProductListener(updater);
+            transactionEngine.close();
+        });
     
         Button selectButton = new Button("Select Product");
         selectButton.setOnAction(e -> {
-            int selectedIndex = productListView.getSelectionModel().getSelectedIndex();
-            if (selectedIndex != -1) { // Check if an item is selected
-                if (selectedIndex < selectedProducts.size()) {
-                    Product selectedProduct = selectedProducts.get(selectedIndex);
-                    selectProduct(selectedProduct.getSelectionNumber());
-                } else {
-                    int productSetIndex = -1;
-                    int counter = selectedProducts.size();
-                    for (ProductSet productSet : Product.productSets) {
-                        productSetIndex++;
-                        if (counter == selectedIndex) {
-                            for (Map.Entry<Product, Integer> entry : productSet.getIncludedProducts().entrySet()) {
-                                Product includedProduct = entry.getKey();
-                                int quantity = entry.getValue();
-                                System.out.println(includedProduct.getName() + " - Quantity: " + quantity);
-                            }
-                            selectProduct(productSet.getMainProduct().getSelectionNumber());
-                            break;
-                        }
-                        counter++;
-                    }
-                    if (productSetIndex >= Product.productSets.size()) {
-                        displayError("Invalid selection.");
-                    }
+            Product selected = productListView.getSelectionModel().getSelectedItem();
+            if (selected == null) {
+                displayError("Please select a product or product set.");
+                return;
+            }
+            ProductSet productSet = setsByMainProduct.get(selected);
+            if (productSet != null) {
+                for (Map.Entry<Product, Integer> entry : productSet.getIncludedProducts().entrySet()) {
+                    Product includedProduct = entry.getKey();
+                    int quantity = entry.getValue();
+                    System.out.println(includedProduct.getName() + " - Quantity: " + quantity);
                 }
+                selectProductSet(productSet);
             } else {
-                displayError("Please select a product or product set.");
+                selectProduct(selected.getSelectionNumber());
             }
         });
     
@@ -119,58 +141,79 @@ public class VendingMachineInterface {
 
         if (product != null && product.isSoldIndividually()) {
             this.selectedProduct = productIndex;
+            this.selectedProductSet = null;
             displayEnterCashMessage();
         } else {
             displayError("Invalid product selection. The selected product is not sold individually. Please choose a different product.");
         }
     }
     
+    /**
+     * Handles the selection of a product set and prompts the user to enter cash.
+     * The set is bought as a whole, at its total price, with all of its products taken out of stock together.
+     *
+     * @param productSet The selected product set.
+     */
+    public void selectProductSet(ProductSet productSet) {
+        this.selectedProductSet = productSet;
+        this.selectedProduct = productSet.getMainProduct().getSelectionNumber();
+        displayEnterCashMessage();
+    }
+
     /**
      * Displays a message to prompt the user to enter cash.
+     * The cash entry window is reused for every purchase.
      */
     public void displayEnterCashMessage() {
-        Stage stage = new Stage();
-        GridPane gridPane = new GridPane();
-        gridPane.setHgap(10);
-        gridPane.setVgap(10);
-        gridPane.setPadding(new Insets(10));
-
-        Label enterCashLabel = new Label("Please enter cash as follows:");
-        gridPane.add(enterCashLabel, 0, 0, 2, 1);
-
-        Label exampleLabel = new Label("Example: If you would like to enter 2 ten: 0,2,0,0,0");
-        gridPane.add(exampleLabel, 0, 1, 2, 1);
-
-        TextField cashInputField = new TextField();
-        gridPane.add(cashInputField, 0, 2, 2, 1);
-
-        Button enterCashButton = new Button("Enter Cash");
-        enterCashButton.setOnAction(e -> {
+        DialogService.getInstance().showEnterCash(cashInput -> {
             try {
-                String cashInput = cashInputField.getText();
                 int[] cash = Cash.parseCash(cashInput);
                 enterCash(cash);
             } catch (NumberFormatException ex) {
                 displayError("Invalid cash input. Please enter a comma-separated list of integers.");
             }
         });
-        gridPane.add(enterCashButton, 0, 3, 2, 1);
-
-        Scene scene = new Scene(gridPane, 400, 400);
-        stage.setScene(scene);
-        stage.show();
     }
 
 
     /**
-     * Processes the entered cash by creating a vending machine request and calculating the change.
+     * Processes the entered cash by creating a vending machine request and submitting it to the transaction engine.
+     * The purchase runs on the engine's executor, so the user interface stays responsive while it is journaled
+     * and recorded; its outcome is shown once it completes.
      * 
      * @param cash The amounts of each denomination of cash entered.
      */
     public void enterCash(int... cash) {
-        VendingMachineRequest request = new VendingMachineRequest(selectedProduct, cash);
-        change = controller.calculateChange(request);
-        displayChangeMessage(change);
+        VendingMachineRequest request = selectedProductSet != null
+                ? new VendingMachineRequest(selectedProductSet, cash)
+                : new VendingMachineRequest(selectedProduct, cash);
+        try {
+            transactionEngine.submit(request).whenComplete((result, error) -> {
+                if (error != null) {
+                    displayError("The purchase could not be completed: " + error.getMessage());
+                    return;
+                }
+                completedPurchases.add(result);
+                purchaseResults.request();
+            });
+        } catch (RejectedExecutionException e) {
+            displayError("The vending machine is closed.");
+        }
+    }
+
+    /**
+     * Shows the outcome of the purchases completed since the last update on the JavaFX application thread.
+     * Failed purchases are reported as errors and the change of every successful purchase is added to the change window.
+     */
+    private void showCompletedPurchases() {
+        for (TransactionResult result = completedPurchases.poll(); result != null; result = completedPurchases.poll()) {
+            if (result.isSuccess()) {
+                change = result.getChange();
+                displayChangeMessage(change);
+            } else {
+                displayError(result.getStatus().getMessage());
+            }
+        }
     }
 
     /**
@@ -179,72 +222,33 @@ public class VendingMachineInterface {
      * @param change The CashBundle containing the change amounts.
      */
     public void displayChangeMessage(CashBundle change) {
-        Stage stage = new Stage();
-        GridPane gridPane = new GridPane();
-        gridPane.setHgap(10);
-        gridPane.setVgap(10);
-        gridPane.setPadding(new Insets(10));
-
-        Label changeLabel = new Label("Your change is: " + change.getTotal() + " split as follows:");
-        gridPane.add(changeLabel, 0, 0, 2, 1);
-
-        Label hundredLabel = new Label("100: " + change.number100);
-        gridPane.add(hundredLabel, 0, 1, 2, 1);
-
-        Label fiftyLabel = new Label("50: " + change.number50);
-        gridPane.add(fiftyLabel, 0, 2, 2, 1);
-
-        Label twentyLabel = new Label("20: " + change.number20);
-        gridPane.add(twentyLabel, 0, 3, 2, 1);
-
-        Label tenLabel = new Label("10: " + change.number10);
-        gridPane.add(tenLabel, 0, 4, 2, 1);
-
-        Label fiveLabel = new Label("5: " + change.number5);
-        gridPane.add(fiveLabel, 0, 5, 2, 1);
-
-        Button closeButton = new Button("Close");
-        closeButton.setOnAction(e -> stage.close());
-        gridPane.add(closeButton, 0, 6, 2, 1);
-
-        Scene scene = new Scene(gridPane, 400, 400);
-        stage.setScene(scene);
-        stage.show();
+        DialogService.getInstance().showChange(change);
     }
 
     /**
      * Displays an error message to the user.
-     * The error message is shown in a separate window.
+     * The error message is shown in the error window, together with any other error shown while it is open.
      *
      * @param message The error message to display.
      */
     public void displayError(String message) {
-        Platform.runLater(() -> {
-            Stage stage = new Stage();
-            Label errorLabel = new Label(message);
-
-            GridPane gridPane = new GridPane();
-            gridPane.add(errorLabel, 0, 0);
-
-            Scene scene = new Scene(gridPane, 600, 100);
-            stage.setScene(scene);
-            stage.show();
-        });
+        DialogService.getInstance().showError(message);
     }
 
     /**
      * Retrieves a product from the selectedProducts list based on its selection number.
+     * Called by the transaction engine's threads; the index is immutable and replaced whole when a selection number changes.
      *
      * @param selectionNumber The selection number of the product to retrieve.
      * @return The Product object with the given selection number, or null if not found.
      */
     private Product getProductBySelectionNumber(int selectionNumber) {
-        for (Product product : selectedProducts) {
-            if (product.getSelectionNumber() == selectionNumber) {
-                return product;
-            }
+        ProductIndex index = selectedProductIndex;
+        if (!index.isCurrent()) {
+            index = new ProductIndex(selectedProducts);
+            selectedProductIndex = index;
         }
-        return null; // Product not found
+        return index.get(selectionNumber);
     }
     
     /**
@@ -271,4 +275,108 @@ public class VendingMachineInterface {
         return details.toString();
     }
 
+    /**
+     * The ProductCell class shows one row of the product list. Cells are only created for the visible rows
+     * and are reused while scrolling, so a row is formatted only when it becomes visible or changes.
+     */
+    private class ProductCell extends ListCell<Product> {
+        private final Map<Product, ProductSet> setsByMainProduct;
+
+        ProductCell(Map<Product, ProductSet> setsByMainProduct) {
+            this.setsByMainProduct = setsByMainProduct;
+        }
+
+        @Override
+        protected void updateItem(Product product, boolean empty) {
+            super.updateItem(product, empty);
+            if (empty || product == null) {
+                setText(null);
+                return;
+            }
+            ProductSet productSet = setsByMainProduct.get(product);
+            setText(productSet != null ? getProductSetDetails(productSet)
+                    : String.format("%s - Calories: %d - Price: %d - Stock: %d",
+                            product.getName(), product.getCalories(), product.getPrice(), product.getStock()));
+        }
+    }
+
+    /**
+     * The ProductRowUpdater class refreshes the rows of the product list whose stock or price changed.
+     * Changes may come from any thread; they are collected as dirty row numbers and applied on the JavaFX
+     * application thread, with at most one pending update however many changes arrive in between.
+     */
+    private static class ProductRowUpdater implements ProductListener {
+        private final ObservableList<Product> rows;
+        private final Map<Product, int[]> rowsOfProduct = new IdentityHashMap<>(); // Never changed once built
+        private final BitSet dirtyRows = new BitSet();
+        private final FxCoalescer refresher = new FxCoalescer(this::refreshDirtyRows);
+
+        /**
+         * Indexes the rows affected by each product: its own row and the rows of the sets including it.
+         *
+         * @param rows              The rows of the product list.
+         * @param setsByMainProduct The product sets by their main product.
+         */
+        ProductRowUpdater(ObservableList<Product> rows, Map<Product, ProductSet> setsByMainProduct) {
+            this.rows = rows;
+            for (int row = 0; row < rows.size(); row++) {
+                Product product = rows.get(row);
+                addRow(product, row);
+                ProductSet productSet = setsByMainProduct.get(product);
+                if (productSet != null) {
+                    for (Product included : productSet.getIncludedProducts().keySet()) {
+                        addRow(included, row);
+                    }
+                }
+            }
+        }
+
+        private void addRow(Product product, int row) {
+            int[] existing = rowsOfProduct.get(product);
+            int[] grown = existing == null ? new int[1] : Arrays.copyOf(existing, existing.length + 1);
+            grown[grown.length - 1] = row;
+            rowsOfProduct.put(product, grown);
+        }
+
+        @Override
+        public void stockChanged(Product product, int oldStock, int newStock) {
+            markDirty(product);
+        }
+
+        @Override
+        public void priceChanged(Product product, int oldPrice, int newPrice) {
+            markDirty(product);
+        }
+
+        /**
+         * Marks the rows of a product for refreshing and schedules an update if none is pending.
+         */
+        private void markDirty(Product product) {
+            int[] affected = rowsOfProduct.get(product);
+            if (affected == null) {
+                return;
+            }
+            synchronized (dirtyRows) {
+                for (int row : affected) {
+                    dirtyRows.set(row);
+                }
+            }
+            refresher.request();
+        }
+
+        /**
+         * Refreshes every dirty row on the JavaFX application thread.
+         */
+        private void refreshDirtyRows() {
+            BitSet refresh;
+            synchronized (dirtyRows) {
+                refresh = (BitSet) dirtyRows.clone();
+                dirtyRows.clear();
+            }
+            for (int row = refresh.nextSetBit(0); row >= 0; row = refresh.nextSetBit(row + 1)) {
+                rows.set(row, rows.get(row)); // Replacing a row with itself makes the list view redraw it
+            }
+        }
+    }
+
 }
\ No newline at end of file
@@ -8,6 +8,8 @@
 public class VendingMachineRequest {
     public Product product;
     public CashBundle enteredCash;
+    private int selectionNumber;
+    private ProductSet productSet;
 
     /**
      * creates a new VendingMachineRequest object the the details seleted by the user
@@ -16,10 +18,33 @@ public class VendingMachineRequest {
      * @param enteredCash The cash entered by the user as an array of denominations.
      */
     public VendingMachineRequest(int selectedProduct, int... enteredCash) {
+        this.selectionNumber = selectedProduct;
         this.product = Product.valueOf(selectedProduct);
         this.enteredCash = new CashBundle(enteredCash);
     }
+
+    /**
+     * creates a new VendingMachineRequest object for buying a whole product set
+     * 
+     * @param productSet The desired product set.
+     * @param enteredCash The cash entered by the user as an array of denominations.
+     */
+    public VendingMachineRequest(ProductSet productSet, int... enteredCash) {
+        this.productSet = productSet;
+        this.product = productSet.getMainProduct();
+        this.selectionNumber = product.getSelectionNumber();
+        this.enteredCash = new CashBundle(enteredCash);
+    }
     
+    /**
+     * Get the selection number the user entered.
+     * 
+     * @return The selection number of the desired product.
+     */
+    public int getSelectionNumber() {
+        return selectionNumber;
+    }
+
     /**
      * Get the selected product from the vending machine request.
      * 
@@ -29,6 +54,15 @@ public class VendingMachineRequest {
         return product;
     }
 
+    /**
+     * Get the product set the user wants to buy.
+     * 
+     * @return The selected product set, or null if a single product was selected.
+     */
+    public ProductSet getProductSet() {
+        return productSet;
+    }
+
     /**
      * Get the cash entered by the user from the vending machine request.
      * 
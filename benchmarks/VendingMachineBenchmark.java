@@ -0,0 +1,346 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The VendingMachineBenchmark class is the JMH suite for the hot paths of the vending machine:
+ * change calculation, cash parsing, product lookup, slot access, product set pricing and the
+ * end-to-end change calculation of the controller.
+ *
+ * <p>
+ * JMH only accepts benchmarks inside a package, and code inside a package cannot import the application's
+ * classes, which live in the default package. The benchmarks therefore call the application through
+ * static final method handles, which the JIT compiler treats as constants and inlines like direct calls.
+ * </p>
+ *
+ * <p>
+ * Compile it together with the application sources and JMH (jmh-core and jmh-generator-annprocess) on the
+ * class path, then run {@link #main(String[])}. Results are written as JSON to the file given as the first
+ * argument, or jmh-result.json, so runs can be compared with each other.
+ * </p>
+ *
+ * @author Ceriola, Antonio
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VendingMachineBenchmark {
+    private static final Class<?> CALCULATOR = type("Calculator");
+    private static final Class<?> CASH = type("Cash");
+    private static final Class<?> CASH_BUNDLE = type("CashBundle");
+    private static final Class<?> PRODUCT = type("Product");
+    private static final Class<?> PRODUCT_SET = type("ProductSet");
+    private static final Class<?> SLOTS = type("Slots");
+    private static final Class<?> CONTROLLER = type("VendingMachineController");
+    private static final Class<?> REQUEST = type("VendingMachineRequest");
+
+    private static final MethodHandle NEW_CALCULATOR = constructor(CALCULATOR);
+    private static final MethodHandle NEW_CASH_BUNDLE = constructor(CASH_BUNDLE, int[].class);
+    private static final MethodHandle NEW_PRODUCT = constructor(PRODUCT, int.class, int.class, int.class, int.class, boolean.class, String.class);
+    private static final MethodHandle NEW_PRODUCT_SET = constructor(PRODUCT_SET, int.class, int.class, int.class, int.class, boolean.class, String.class);
+    private static final MethodHandle NEW_SLOTS = constructor(SLOTS, int.class, int.class);
+    private static final MethodHandle NEW_CONTROLLER = constructor(CONTROLLER);
+    private static final MethodHandle NEW_BOUNDED_CONTROLLER = constructor(CONTROLLER, CASH_BUNDLE);
+    private static final MethodHandle NEW_REQUEST = constructor(REQUEST, int.class, int[].class);
+
+    private static final MethodHandle CALCULATE_CHANGE = virtual(CALCULATOR, "calculateChange", CASH_BUNDLE, int.class);
+    private static final MethodHandle CALCULATE_CHANGE_WITH_INVENTORY = virtual(CALCULATOR, "calculateChange", CASH_BUNDLE, int.class, CASH_BUNDLE);
+    private static final MethodHandle CALCULATE_TOTAL = virtual(CALCULATOR, "calculateTotal", int.class, CASH_BUNDLE);
+    private static final MethodHandle PARSE_CASH = statik(CASH, "parseCash", int[].class, String.class);
+    private static final MethodHandle VALUE_OF = statik(PRODUCT, "valueOf", PRODUCT, int.class);
+    private static final MethodHandle ADD_ALL_TO_CATALOG = statik(PRODUCT, "addAllToCatalog", void.class, Collection.class);
+    private static final MethodHandle GET_ALL_CATALOG_PRODUCTS = statik(PRODUCT, "getAllProducts", List.class);
+    private static final MethodHandle FILL_SLOT = virtual(SLOTS, "fillSlot", void.class, int.class, PRODUCT, int.class);
+    private static final MethodHandle GET_PRODUCT_BY_SELECTION_NUMBER = virtual(SLOTS, "getProductBySelectionNumber", PRODUCT, int.class);
+    private static final MethodHandle GET_ALL_PRODUCTS = virtual(SLOTS, "getAllProducts", List.class);
+    private static final MethodHandle ADD_INCLUDED_PRODUCT = virtual(PRODUCT_SET, "addIncludedProduct", void.class, PRODUCT, int.class);
+    private static final MethodHandle GET_TOTAL_PRICE = virtual(PRODUCT_SET, "getTotalPrice", int.class);
+    private static final MethodHandle GET_TOTAL_CALORIES = virtual(PRODUCT_SET, "getTotalCalories", int.class);
+    private static final MethodHandle CONTROLLER_CALCULATE_CHANGE = virtual(CONTROLLER, "calculateChange", CASH_BUNDLE, REQUEST);
+
+    /**
+     * Change amounts and the cash used to pay for them.
+     */
+    @State(Scope.Thread)
+    public static class CashState {
+        @Param({"5", "385", "4995"})
+        public int amount;
+
+        public Object calculator;
+        public Object enteredCash;
+        public Object inventory;
+        public String cashInput;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            calculator = (Object) NEW_CALCULATOR.invokeExact();
+            enteredCash = (Object) NEW_CASH_BUNDLE.invokeExact(new int[] {3, 2, 1, 1, amount / 100});
+            inventory = (Object) NEW_CASH_BUNDLE.invokeExact(new int[] {25, 25, 25, 25, 25});
+            cashInput = "3,2,1,1," + (amount / 100);
+        }
+    }
+
+    /**
+     * A catalog grown to the requested number of products.
+     */
+    @State(Scope.Thread)
+    public static class CatalogState {
+        @Param({"20", "1000", "50000"})
+        public int catalogSize;
+
+        public int[] selectionNumbers;
+        public int next;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            List<?> catalog = (List<?>) GET_ALL_CATALOG_PRODUCTS.invokeExact();
+            Collection<Object> added = new ArrayList<>();
+            for (int selectionNumber = catalog.size() + 1; selectionNumber <= catalogSize; selectionNumber++) {
+                added.add((Object) NEW_PRODUCT.invokeExact(selectionNumber, 10, 100, 250, true, "Product " + selectionNumber));
+            }
+            ADD_ALL_TO_CATALOG.invokeExact((Collection<?>) added); // One catalog version for the whole trial
+            selectionNumbers = new int[1024];
+            for (int i = 0; i < selectionNumbers.length; i++) {
+                selectionNumbers[i] = 1 + (int) ((i * 2654435761L) % catalogSize);
+            }
+        }
+
+        public int nextSelectionNumber() {
+            next = (next + 1) & (selectionNumbers.length - 1);
+            return selectionNumbers[next];
+        }
+    }
+
+    /**
+     * Vending machine slots of the requested size, every slot filled with its own product.
+     */
+    @State(Scope.Thread)
+    public static class SlotsState {
+        @Param({"10", "1000"})
+        public int numSlots;
+
+        @Param({"10", "500"})
+        public int numItemsPerSlot;
+
+        public Object slots;
+        public int next;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            slots = (Object) NEW_SLOTS.invokeExact(numSlots, numItemsPerSlot);
+            for (int i = 0; i < numSlots; i++) {
+                Object product = (Object) NEW_PRODUCT.invokeExact(i + 1, numItemsPerSlot, 100, 250, true, "Slot " + (i + 1));
+                FILL_SLOT.invokeExact(slots, i, product, numItemsPerSlot);
+            }
+        }
+
+        public int nextSelectionNumber() {
+            next = next + 1 == numSlots ? 0 : next + 1;
+            return next + 1;
+        }
+    }
+
+    /**
+     * A product set with the requested number of included products.
+     */
+    @State(Scope.Thread)
+    public static class ProductSetState {
+        @Param({"2", "16"})
+        public int includedProducts;
+
+        public Object productSet;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            productSet = (Object) NEW_PRODUCT_SET.invokeExact(1, 10, 165, 250, true, "Benchmark Set");
+            for (int i = 0; i < includedProducts; i++) {
+                Object product = (Object) NEW_PRODUCT.invokeExact(100 + i, 10, 15, 25, false, "Topping " + i);
+                ADD_INCLUDED_PRODUCT.invokeExact(productSet, product, 1 + i % 3);
+            }
+        }
+    }
+
+    /**
+     * A controller with and without a cash inventory, and a request for a preset product.
+     */
+    @State(Scope.Thread)
+    public static class ControllerState {
+        public Object controller;
+        public Object boundedController;
+        public Object request;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            controller = (Object) NEW_CONTROLLER.invokeExact();
+            boundedController = (Object) NEW_BOUNDED_CONTROLLER.invokeExact((Object) NEW_CASH_BUNDLE.invokeExact(new int[] {25, 25, 25, 25, 25}));
+            request = (Object) NEW_REQUEST.invokeExact(1, new int[] {1, 1, 1, 1, 1});
+        }
+    }
+
+    @Benchmark
+    public Object calculateChange(CashState state) throws Throwable {
+        return (Object) CALCULATE_CHANGE.invokeExact(state.calculator, state.amount);
+    }
+
+    @Benchmark
+    public Object calculateChangeWithInventory(CashState state) throws Throwable {
+        return (Object) CALCULATE_CHANGE_WITH_INVENTORY.invokeExact(state.calculator, state.amount, state.inventory);
+    }
+
+    @Benchmark
+    public int calculateTotal(CashState state) throws Throwable {
+        return (int) CALCULATE_TOTAL.invokeExact(state.calculator, state.enteredCash);
+    }
+
+    @Benchmark
+    public int[] parseCash(CashState state) throws Throwable {
+        return (int[]) PARSE_CASH.invokeExact(state.cashInput);
+    }
+
+    @Benchmark
+    public Object productValueOf(CatalogState state) throws Throwable {
+        return (Object) VALUE_OF.invokeExact(state.nextSelectionNumber());
+    }
+
+    @Benchmark
+    public Object slotsGetProductBySelectionNumber(SlotsState state) throws Throwable {
+        return (Object) GET_PRODUCT_BY_SELECTION_NUMBER.invokeExact(state.slots, state.nextSelectionNumber());
+    }
+
+    @Benchmark
+    public void slotsGetAllProducts(SlotsState state, Blackhole blackhole) throws Throwable {
+        List<?> products = (List<?>) GET_ALL_PRODUCTS.invokeExact(state.slots);
+        for (int i = 0; i < products.size(); i++) {
+            blackhole.consume(products.get(i));
+        }
+    }
+
+    @Benchmark
+    public int productSetTotalPrice(ProductSetState state) throws Throwable {
+        return (int) GET_TOTAL_PRICE.invokeExact(state.productSet);
+    }
+
+    @Benchmark
+    public int productSetTotalCalories(ProductSetState state) throws Throwable {
+        return (int) GET_TOTAL_CALORIES.invokeExact(state.productSet);
+    }
+
+    @Benchmark
+    public Object controllerCalculateChange(ControllerState state) throws Throwable {
+        return (Object) CONTROLLER_CALCULATE_CHANGE.invokeExact(state.controller, state.request);
+    }
+
+    @Benchmark
+    public Object controllerCalculateChangeWithInventory(ControllerState state) throws Throwable {
+        return (Object) CONTROLLER_CALCULATE_CHANGE.invokeExact(state.boundedController, state.request);
+    }
+
+    /**
+     * Runs the whole suite and writes the results as JSON.
+     *
+     * @param args The optional path of the JSON result file, followed by an optional include pattern.
+     * @throws RunnerException if JMH fails to run the benchmarks.
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 1 ? args[1] : VendingMachineBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .result(args.length > 0 ? args[0] : "jmh-result.json")
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * Loads an application class from the default package.
+     *
+     * @param name The simple name of the class.
+     * @return The class.
+     */
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Finds a public constructor, adapted so that its result is typed as Object.
+     */
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().findConstructor(owner, MethodType.methodType(void.class, parameters));
+            return handle.asType(erase(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Finds a public instance method, adapted so that application types are typed as Object.
+     */
+    private static MethodHandle virtual(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().findVirtual(owner, name, MethodType.methodType(returnType, parameters));
+            return handle.asType(erase(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Finds a public static method, adapted so that application types are typed as Object.
+     */
+    private static MethodHandle statik(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().findStatic(owner, name, MethodType.methodType(returnType, parameters));
+            return handle.asType(erase(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Replaces every application class in a method type with Object, keeping primitives, arrays and JDK types.
+     */
+    private static MethodType erase(MethodType type) {
+        MethodType erased = type;
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (isApplicationType(type.parameterType(i))) {
+                erased = erased.changeParameterType(i, Object.class);
+            }
+        }
+        return isApplicationType(type.returnType()) ? erased.changeReturnType(Object.class) : erased;
+    }
+
+    private static boolean isApplicationType(Class<?> type) {
+        return !type.isPrimitive() && !type.isArray() && type.getPackageName().isEmpty();
+    }
+}